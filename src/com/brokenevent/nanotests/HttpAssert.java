@@ -24,14 +24,44 @@
 
 package com.brokenevent.nanotests;
 
+import com.brokenevent.nanotests.http.ConnectionStats;
+import com.brokenevent.nanotests.http.ContentComparator;
+import com.brokenevent.nanotests.http.ContentDigest;
+import com.brokenevent.nanotests.http.HttpClientPool;
+import com.brokenevent.nanotests.http.MultiNodeRequest;
+import com.brokenevent.nanotests.http.RequestTimings;
+import com.brokenevent.nanotests.http.TestContext;
 import com.brokenevent.nanotests.http.TestGetRequest;
 import com.brokenevent.nanotests.http.TestRequest;
+import com.brokenevent.nanotests.load.ArrivalRateResult;
+import com.brokenevent.nanotests.load.ArrivalRateRunner;
+import com.brokenevent.nanotests.load.Benchmark;
+import com.brokenevent.nanotests.load.BenchmarkResult;
+import com.brokenevent.nanotests.load.LoadResult;
+import com.brokenevent.nanotests.load.LoadRunner;
+import com.brokenevent.nanotests.load.SoakResult;
+import com.brokenevent.nanotests.load.Trend;
 import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpResponse;
 import org.junit.Assert;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Pattern;
 
 /**
@@ -54,10 +84,28 @@ public final class HttpAssert {
    */
   protected HttpAssert(){}
 
+  private static final long MAPPING_SIZE = 256 * 1024 * 1024;
+  private static final int WARMUP_REQUESTS = 100;
+
+  private static volatile int bulkConcurrency = 16;
+
   private static String normalizeUrl(String value){
     return value.replaceAll(" ", "%20");
   }
 
+  private static TestRequest await(CompletableFuture<? extends TestRequest> future){
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AssertionError("Interrupted while waiting for the response", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof AssertionError)
+        throw (AssertionError)e.getCause();
+      throw new AssertionError("Asynchronous request failed", e.getCause());
+    }
+  }
+
   /**
    * Asserts that the http query result code is OK (200). If it isn't, an {@link AssertionError} is thrown.<br>
    * Use this method to make a set of asserts for a single request.
@@ -222,6 +270,7 @@ public final class HttpAssert {
     resource = normalizeUrl(resource);
     TestGetRequest request = new TestGetRequest(resource);
     request.execute();
+    request.release();
     if (request.getResponse().getStatusLine().getStatusCode() != code)
       Assert.fail("Response for " + resource + " is " + request.getResponse().getStatusLine().getStatusCode());
   }
@@ -230,46 +279,63 @@ public final class HttpAssert {
    * Asserts that the http query result content is equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
    * Use this method to make a set of asserts for a single request.
    * To just check the result content for request, use {@link com.brokenevent.nanotests.HttpAssert#assertHttpContent(String, String)}.
+   * The content is compared while it is read, so the check stops at the first different byte and reports its offset.
+   * The expected value is encoded with the charset of the response ({@link TestRequest#getCharset()}).
    * @param request {@link TestRequest} to get result from
    * @param expected expected content value
    */
   public static void assertHttpContent(TestRequest request, String expected){
-    try {
-      InputStream stream = request.getResponse().getEntity().getContent();
-
-      ByteArrayOutputStream cache = new ByteArrayOutputStream();
-      byte[] buffer = new byte[1024];
-      int read;
-      while ((read = stream.read(buffer)) != -1)
-        cache.write(buffer, 0, read);
-
-      Assert.assertEquals(expected, new String(cache.toByteArray()));
-
-    } catch (IOException e) {
-      throw new AssertionError("Failed to get content", e);
-    }
+    assertHttpContent(request, expected.getBytes(request.getCharset()));
   }
 
   /**
    * Asserts that the http query result content is equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
    * Use this method to make a set of asserts for a single request.
    * To just check the result content for request, use {@link com.brokenevent.nanotests.HttpAssert#assertHttpContent(String, byte[])}.
+   * The content is compared while it is read, so the check stops at the first different byte and reports its offset.
    * @param request {@link TestRequest} to get result from
    * @param expected expected content value
    */
   public static void assertHttpContent(TestRequest request, byte[] expected){
-    try {
-      InputStream stream = request.getResponse().getEntity().getContent();
+    assertHttpContent(request, ByteBuffer.wrap(expected));
+  }
 
-      ByteArrayOutputStream cache = new ByteArrayOutputStream();
-      byte[] buffer = new byte[1024];
-      int read;
-      while ((read = stream.read(buffer)) != -1)
-        cache.write(buffer, 0, read);
+  private static void assertHttpContent(TestRequest request, ByteBuffer expected){
+    boolean matched = false;
+    try {
+      ContentComparator comparator = new ContentComparator(request.getContent());
+      comparator.compare(expected);
+      comparator.assertEnd();
+      matched = true;
+    } finally {
+      if (!matched)
+        request.abort();
+    }
+  }
 
-      Assert.assertArrayEquals(expected, cache.toByteArray());
+  /**
+   * Asserts that the http query result content is equal to the content of the file. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The file is memory-mapped and compared while the response content is read, so with the streaming enabled by
+   * {@link TestRequest#setStreaming(boolean)} neither of them is copied to the heap.
+   * Use this method to make a set of asserts for a single request.
+   * To just check the result content for request, use {@link com.brokenevent.nanotests.HttpAssert#assertHttpContent(String, Path)}.
+   * @param request {@link TestRequest} to get result from
+   * @param expectedFile file with the expected content
+   */
+  public static void assertHttpContent(TestRequest request, Path expectedFile){
+    boolean matched = false;
+    try (FileChannel channel = FileChannel.open(expectedFile, StandardOpenOption.READ)) {
+      ContentComparator comparator = new ContentComparator(request.getContent());
+      long size = channel.size();
+      for (long position = 0; position < size; position += MAPPING_SIZE)
+        comparator.compare(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPING_SIZE, size - position)));
+      comparator.assertEnd();
+      matched = true;
     } catch (IOException e) {
-      throw new AssertionError("Failed to get content", e);
+      throw new AssertionError("Failed to read " + expectedFile, e);
+    } finally {
+      if (!matched)
+        request.abort();
     }
   }
 
@@ -281,26 +347,14 @@ public final class HttpAssert {
    * @param expected regex pattern to match the content value
    */
   public static void assertHttpContent(TestRequest request, Pattern expected){
-    try {
-      InputStream stream = request.getResponse().getEntity().getContent();
-
-      ByteArrayOutputStream cache = new ByteArrayOutputStream();
-      byte[] buffer = new byte[1024];
-      int read;
-      while ((read = stream.read(buffer)) != -1)
-        cache.write(buffer, 0, read);
-
-      String content = new String(cache.toByteArray());
-      if (!expected.matcher(content).matches())
-        throw new AssertionError("Regex check failed: " + expected);
-
-    } catch (IOException e) {
-      throw new AssertionError("Failed to get content", e);
-    }
+    if (!expected.matcher(request.getStringContent()).matches())
+      throw new AssertionError("Regex check failed: " + expected);
   }
 
   /**
    * Asserts that the http query result content is equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The content is compared while it is read from the connection, so it isn't copied to the heap and the check
+   * stops at the first different byte.
    * Use this method to assert the single request. If there are some checks for single URL, use {@link TestRequest} descendants:
    * <pre>
    *   TestGetRequest getRequest = new TestGetRequest(url);
@@ -315,13 +369,20 @@ public final class HttpAssert {
    */
   public static void assertHttpContent(String resource, String expected){
     TestGetRequest request = new TestGetRequest(resource);
+    request.setStreaming(true);
     request.execute();
-    assertHttpOk(request);
-    assertHttpContent(request, expected);
+    try {
+      assertHttpOk(request);
+      assertHttpContent(request, expected);
+    } finally {
+      request.release();
+    }
   }
 
   /**
    * Asserts that the http query result content is equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The content is compared while it is read from the connection, so it isn't copied to the heap and the check
+   * stops at the first different byte.
    * Use this method to assert the single request. If there are some checks for single URL, use {@link TestRequest} descendants:
    * <pre>
    *   TestGetRequest getRequest = new TestGetRequest(url);
@@ -336,9 +397,14 @@ public final class HttpAssert {
    */
   public static void assertHttpContent(String resource, byte[] expected){
     TestGetRequest request = new TestGetRequest(resource);
+    request.setStreaming(true);
     request.execute();
-    assertHttpOk(request);
-    assertHttpContent(request, expected);
+    try {
+      assertHttpOk(request);
+      assertHttpContent(request, expected);
+    } finally {
+      request.release();
+    }
   }
 
   /**
@@ -361,4 +427,865 @@ public final class HttpAssert {
     assertHttpOk(request);
     assertHttpContent(request, expected);
   }
+
+  /**
+   * Asserts that the result code of the asynchronous http query is OK (200). If it isn't, an {@link AssertionError} is thrown.<br>
+   * Waits for the request to complete. Start all the requests before asserting any of them to run them in parallel:
+   * <pre>
+   *   CompletableFuture&lt;TestRequest&gt; first = new TestGetRequest(url1).executeAsync();
+   *   CompletableFuture&lt;TestRequest&gt; second = new TestGetRequest(url2).executeAsync();
+   *
+   *   assertHttpOk(first);
+   *   assertHttpOk(second);
+   * </pre>
+   * @param future future of the {@link TestRequest#executeAsync()}
+   */
+  public static void assertHttpOk(CompletableFuture<? extends TestRequest> future){
+    assertHttpOk(await(future));
+  }
+
+  /**
+   * Asserts that the result code of the asynchronous http query is equal with the expected. If it isn't, an {@link AssertionError} is thrown.<br>
+   * Waits for the request to complete.
+   * @param future future of the {@link TestRequest#executeAsync()}
+   * @param code expected http code value
+   */
+  public static void assertHttpCode(CompletableFuture<? extends TestRequest> future, int code){
+    assertHttpCode(await(future), code);
+  }
+
+  /**
+   * Asserts that the result content of the asynchronous http query is equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
+   * Waits for the request to complete.
+   * @param future future of the {@link TestRequest#executeAsync()}
+   * @param expected expected content value
+   */
+  public static void assertHttpContent(CompletableFuture<? extends TestRequest> future, String expected){
+    assertHttpContent(await(future), expected);
+  }
+
+  /**
+   * Asserts that the result content of the asynchronous http query is equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
+   * Waits for the request to complete.
+   * @param future future of the {@link TestRequest#executeAsync()}
+   * @param expected expected content value
+   */
+  public static void assertHttpContent(CompletableFuture<? extends TestRequest> future, byte[] expected){
+    assertHttpContent(await(future), expected);
+  }
+
+  /**
+   * Asserts that the result content of the asynchronous http query matches given {@link Pattern}. If it isn't, an {@link AssertionError} is thrown.<br>
+   * Waits for the request to complete.
+   * @param future future of the {@link TestRequest#executeAsync()}
+   * @param expected regex pattern to match the content value
+   */
+  public static void assertHttpContent(CompletableFuture<? extends TestRequest> future, Pattern expected){
+    assertHttpContent(await(future), expected);
+  }
+
+  /**
+   * Sets the count of the requests executed at once by the bulk asserts like {@link #assertAllHttpOk(Collection)}.
+   * Default value is 16. The value should not exceed {@link HttpClientPool#getMaxConnectionsPerRoute()}.
+   * @param concurrency maximum count of the parallel requests
+   */
+  public static void setBulkConcurrency(int concurrency){
+    if (concurrency < 1)
+      throw new IllegalArgumentException("Concurrency should be positive: " + concurrency);
+    bulkConcurrency = concurrency;
+  }
+
+  /**
+   * Asserts that the http query result code is OK (200) for all the given resources.
+   * The requests are executed in parallel and all the failures are reported by a single {@link AssertionError}.
+   * @param resources URLs for the requests (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   */
+  public static void assertAllHttpOk(Collection<String> resources){
+    assertAllHttpOk(resources, bulkConcurrency);
+  }
+
+  /**
+   * Asserts that the http query result code is OK (200) for all the given resources.
+   * The requests are executed in parallel and all the failures are reported by a single {@link AssertionError}.
+   * @param resources URLs for the requests (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param concurrency maximum count of the parallel requests
+   */
+  public static void assertAllHttpOk(Collection<String> resources, int concurrency){
+    Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+    for (String resource: resources)
+      expected.put(resource, 200);
+    assertHttpCodes(expected, concurrency);
+  }
+
+  /**
+   * Asserts that the http query result code is equal to expected value for every resource in map.
+   * The requests are executed in parallel and all the failures are reported by a single {@link AssertionError}:
+   * <pre>
+   *   Map&lt;String, Integer&gt; routes = new LinkedHashMap&lt;String, Integer&gt;();
+   *   routes.put("/service/status", 200);
+   *   routes.put("/service/missing", 404);
+   *
+   *   assertHttpCodes(routes);
+   * </pre>
+   * @param expected map of URLs for the requests (<code>/resource</code>) to expected http code values
+   */
+  public static void assertHttpCodes(Map<String, Integer> expected){
+    assertHttpCodes(expected, bulkConcurrency);
+  }
+
+  /**
+   * Asserts that the http query result code is equal to expected value for every resource in map.
+   * The requests are executed in parallel and all the failures are reported by a single {@link AssertionError}.
+   * @param expected map of URLs for the requests (<code>/resource</code>) to expected http code values
+   * @param concurrency maximum count of the parallel requests
+   */
+  public static void assertHttpCodes(Map<String, Integer> expected, int concurrency){
+    if (concurrency < 1)
+      throw new IllegalArgumentException("Concurrency should be positive: " + concurrency);
+
+    final String[] failures = new String[expected.size()];
+    final Semaphore permits = new Semaphore(concurrency);
+    // the pool threads don't inherit the scope, so the requests are bound to the context of the caller
+    final TestContext context = TestContext.current();
+    HttpClientPool pool = context.getPool();
+
+    int index = 0;
+    for (Map.Entry<String, Integer> entry: expected.entrySet()){
+      final int i = index++;
+      final String resource = normalizeUrl(entry.getKey());
+      final int code = entry.getValue();
+
+      permits.acquireUninterruptibly();
+      pool.supplyAsync(() -> {
+        TestGetRequest request = new TestGetRequest(context, resource);
+        request.execute();
+        request.release();
+        return request.getResponse().getStatusLine().getStatusCode();
+      }).whenComplete((actual, e) -> {
+        if (e != null)
+          failures[i] = resource + ": " + (e.getCause() != null ? e.getCause() : e);
+        else if (actual != code)
+          failures[i] = "Response for " + resource + " is " + actual + ", expected " + code;
+        permits.release();
+      });
+    }
+
+    // wait for the running requests
+    permits.acquireUninterruptibly(concurrency);
+
+    StringBuilder message = new StringBuilder();
+    int failed = 0;
+    for (String failure: failures)
+      if (failure != null){
+        message.append('\n').append(failure);
+        failed++;
+      }
+
+    if (failed > 0)
+      throw new AssertionError(failed + " of " + failures.length + " requests failed:" + message);
+  }
+
+  /**
+   * Asserts that the latency percentiles of the resource are within the budgets.
+   * The GET requests are executed by {@link LoadRunner} with the given count of the parallel workers one after another.
+   * The measurement is preceded by 100 warm-up requests, and their median latency is the expected
+   * interval of the coordinated omission correction, so a stalled request is recorded together with the requests its
+   * worker would have sent meanwhile. Use {@link #assertLatency(String, int, int, Duration, Duration, Duration)}
+   * to set the pacing of the requests.
+   * If any budget is broken or any request is failed, an {@link AssertionError} with the full percentiles table is thrown.
+   * <pre>
+   *   assertLatency("/service/status", 10000, 8, Duration.ofMillis(20), Duration.ofMillis(100));
+   * </pre>
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param requests total count of the requests
+   * @param concurrency count of the parallel workers
+   * @param p50 budget for the median latency
+   * @param p99 budget for the 99th percentile of the latency
+   */
+  public static void assertLatency(String resource, int requests, int concurrency, Duration p50, Duration p99){
+    resource = normalizeUrl(resource);
+    LoadRunner runner = new LoadRunner(LoadRunner.httpGet(resource));
+    runner.setConcurrency(concurrency);
+    LoadResult warmup = runner.run(WARMUP_REQUESTS);
+    runner.setExpectedInterval(Duration.ofNanos(warmup.getLatencyAtPercentile(50)));
+    checkLatency(resource, runner.run(requests), p50, p99);
+  }
+
+  /**
+   * Asserts that the latency percentiles of the resource are within the budgets.
+   * The GET requests are executed by {@link LoadRunner} with the given count of the parallel workers, each worker
+   * starts the request once per the pacing interval. The latencies are corrected for the coordinated omission,
+   * so the requests delayed by a stalled request are taken into account.
+   * If any budget is broken or any request is failed, an {@link AssertionError} with the full percentiles table is thrown.
+   * <pre>
+   *   assertLatency("/service/status", 10000, 8, Duration.ofMillis(10), Duration.ofMillis(20), Duration.ofMillis(100));
+   * </pre>
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param requests total count of the requests
+   * @param concurrency count of the parallel workers
+   * @param pacing expected interval between the requests of the single worker
+   * @param p50 budget for the median latency
+   * @param p99 budget for the 99th percentile of the latency
+   */
+  public static void assertLatency(String resource, int requests, int concurrency, Duration pacing, Duration p50, Duration p99){
+    resource = normalizeUrl(resource);
+    LoadRunner runner = new LoadRunner(LoadRunner.httpGet(resource));
+    runner.setConcurrency(concurrency);
+    runner.setPacing(pacing);
+    checkLatency(resource, runner.run(requests), p50, p99);
+  }
+
+  private static void checkLatency(String resource, LoadResult result, Duration p50, Duration p99){
+    StringBuilder violations = new StringBuilder();
+    checkLatency(result, 50, p50, violations);
+    checkLatency(result, 99, p99, violations);
+    if (result.getFailed() > 0)
+      violations.append(", ").append(result.getFailed()).append(" requests failed");
+
+    if (violations.length() > 0)
+      throw new AssertionError("Latency budget is broken for " + resource + ":" + violations.substring(1) + "\n" + result);
+  }
+
+  private static void checkLatency(LoadResult result, double percentile, Duration budget, StringBuilder violations){
+    long actual = result.getLatencyAtPercentile(percentile);
+    if (actual == Long.MAX_VALUE)
+      violations.append(String.format(Locale.US, ", p%.0f falls on the dropped requests", percentile));
+    else if (actual > budget.toNanos())
+      violations.append(String.format(Locale.US, ", p%.0f is %.3f ms, expected %.3f ms", percentile, actual / 1e6, budget.toNanos() / 1e6));
+  }
+
+  /**
+   * Asserts that the resource handles at least the given count of the requests per second.
+   * The GET requests are executed by {@link LoadRunner} during the given time using the bulk concurrency
+   * (see {@link #setBulkConcurrency(int)}).
+   * If the throughput is lower or any request is failed, an {@link AssertionError} with the full percentiles table is thrown.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param rps expected minimal count of the requests per second
+   * @param duration duration of the test
+   */
+  public static void assertThroughputAtLeast(String resource, double rps, Duration duration){
+    assertThroughputAtLeast(resource, rps, duration, bulkConcurrency);
+  }
+
+  /**
+   * Asserts that the resource handles at least the given count of the requests per second.
+   * The GET requests are executed by {@link LoadRunner} during the given time after 100 warm-up
+   * requests. The workers send the requests one after another as fast as the resource responds, and the measured rate
+   * is compared. The latencies are corrected for the coordinated omission by the interval of the expected rate
+   * for the single worker, <code>concurrency / rps</code> seconds.
+   * If the throughput is lower or any request is failed, an {@link AssertionError} with the full percentiles table is thrown.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param rps expected minimal count of the requests per second
+   * @param duration duration of the test
+   * @param concurrency count of the parallel workers
+   */
+  public static void assertThroughputAtLeast(String resource, double rps, Duration duration, int concurrency){
+    if (rps <= 0)
+      throw new IllegalArgumentException("Rate should be positive: " + rps);
+
+    resource = normalizeUrl(resource);
+    LoadRunner runner = new LoadRunner(LoadRunner.httpGet(resource));
+    runner.setConcurrency(concurrency);
+    runner.run(WARMUP_REQUESTS);
+    runner.setExpectedInterval(Duration.ofNanos((long)(concurrency * 1e9 / rps)));
+    LoadResult result = runner.runFor(duration);
+
+    if (result.getThroughput() < rps)
+      throw new AssertionError(String.format(Locale.US, "Throughput of %s is %.1f requests/s, expected %.1f%n",
+          resource, result.getThroughput(), rps) + result);
+    if (result.getFailed() > 0)
+      throw new AssertionError(result.getFailed() + " requests to " + resource + " failed\n" + result);
+  }
+
+  /**
+   * Asserts that the time to first byte of the request is less than expected. This is the time from the request is sent
+   * to the response headers are received, so it doesn't include the connection setup and the body transfer.
+   * If it isn't, an {@link AssertionError} with all the request timings is thrown.
+   * @param request {@link TestRequest} to get result from
+   * @param expected maximum time to first byte
+   */
+  public static void assertTimeToFirstByteBelow(TestRequest request, Duration expected){
+    RequestTimings timings = request.getTimings();
+    Assert.assertNotNull("Request " + request.getRequestUrl() + " isn't executed", timings);
+    if (timings.getTimeToFirstByte() >= expected.toNanos())
+      throw new AssertionError(String.format(Locale.US, "Time to first byte of %s is %.3f ms, expected below %.3f ms (%s)",
+          request.getRequestUrl(), timings.getTimeToFirstByte() / 1e6, expected.toNanos() / 1e6, timings));
+  }
+
+  /**
+   * Asserts that the time to first byte of the GET request is less than expected. This is the time from the request is sent
+   * to the response headers are received, so it doesn't include the connection setup and the body transfer.
+   * If it isn't, an {@link AssertionError} with all the request timings is thrown.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param expected maximum time to first byte
+   */
+  public static void assertTimeToFirstByteBelow(String resource, Duration expected){
+    TestGetRequest request = new TestGetRequest(normalizeUrl(resource));
+    request.execute();
+    request.release();
+    assertTimeToFirstByteBelow(request, expected);
+  }
+
+  /**
+   * Asserts that the request completes with 200 OK, including its content, within the deadline. The request is aborted
+   * when the deadline passes, so a stalled server fails the assert in time with the phase the exchange stalled in,
+   * like <code>waiting for the response</code>.
+   * @param request {@link TestRequest} to execute
+   * @param deadline maximum time of the whole exchange
+   */
+  public static void assertHttpWithin(TestRequest request, Duration deadline){
+    request.setDeadline(deadline);
+    request.execute();
+    request.getBytes();
+    assertHttpOk(request);
+    RequestTimings timings = request.getTimings();
+    if (timings.getTotalTime() >= deadline.toNanos())
+      throw new AssertionError(String.format(Locale.US, "Request to %s took %.3f ms, expected below %d ms (%s)",
+          request.getRequestUrl(), timings.getTotalTime() / 1e6, deadline.toMillis(), timings));
+  }
+
+  /**
+   * Asserts that the GET request completes with 200 OK, including its content, within the deadline. The request is
+   * aborted when the deadline passes, so a stalled server fails the assert in time with the phase the exchange stalled in.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param deadline maximum time of the whole exchange
+   */
+  public static void assertHttpWithin(String resource, Duration deadline){
+    TestGetRequest request = new TestGetRequest(normalizeUrl(resource));
+    try {
+      assertHttpWithin(request, deadline);
+    } finally {
+      request.release();
+    }
+  }
+
+  /**
+   * Asserts that the latency of the load test at the given percentile is within the budget.
+   * If it isn't, an {@link AssertionError} with the full percentiles table is thrown.
+   * @param result result of the {@link LoadRunner} or {@link com.brokenevent.nanotests.load.UserLoadRunner}
+   * @param percentile percentile in range 0..100
+   * @param budget maximum latency at the percentile
+   */
+  public static void assertLatencyBelow(LoadResult result, double percentile, Duration budget){
+    StringBuilder violations = new StringBuilder();
+    checkLatency(result, percentile, budget, violations);
+    if (violations.length() > 0)
+      throw new AssertionError("Latency budget is broken:" + violations.substring(1) + "\n" + result);
+  }
+
+  /**
+   * Asserts that the part of the failed iterations of the load test is less than expected.
+   * If it isn't, an {@link AssertionError} with the first errors is thrown.
+   * @param result result of the {@link LoadRunner} or {@link com.brokenevent.nanotests.load.UserLoadRunner}
+   * @param rate maximum part of the failed iterations in range 0..1
+   */
+  public static void assertErrorRateBelow(LoadResult result, double rate){
+    double actual = result.getRequests() == 0 ? 0 : (double)result.getFailed() / result.getRequests();
+    if (result.getFailed() > 0 && actual >= rate)
+      throw new AssertionError(String.format(Locale.US, "Error rate is %.4f, expected below %.4f%n", actual, rate) + result);
+  }
+
+  /**
+   * Asserts that the load test executed at least the given count of the iterations per second.
+   * If it isn't, an {@link AssertionError} with the full percentiles table is thrown.
+   * @param result result of the {@link LoadRunner} or {@link com.brokenevent.nanotests.load.UserLoadRunner}
+   * @param rps expected minimal count of the iterations per second
+   */
+  public static void assertThroughputAtLeast(LoadResult result, double rps){
+    if (result.getThroughput() < rps)
+      throw new AssertionError(String.format(Locale.US, "Throughput is %.1f requests/s, expected %.1f%n",
+          result.getThroughput(), rps) + result);
+  }
+
+  /**
+   * Asserts that the resource sustains the given arrival rate. The GET requests are started by {@link ArrivalRateRunner}
+   * at the constant rate which doesn't depend on the response times.
+   * If any request is dropped because of the in-flight limit, any request is failed or the 99th percentile
+   * of the latency exceeds the budget, an {@link AssertionError} with the full percentiles table is thrown.
+   * The assert also fails if more than 1% of the requests are sent late, since the rate isn't really applied then.
+   * <pre>
+   *   assertSustainsRate("/service/status", 500, Duration.ofSeconds(30), Duration.ofMillis(50));
+   * </pre>
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param rps count of the requests per second
+   * @param duration duration of the test
+   * @param p99 budget for the 99th percentile of the latency
+   */
+  public static void assertSustainsRate(String resource, double rps, Duration duration, Duration p99){
+    resource = normalizeUrl(resource);
+    ArrivalRateRunner runner = new ArrivalRateRunner(LoadRunner.httpGet(resource));
+    assertSustainsRate(runner.run(rps, duration), p99);
+  }
+
+  /**
+   * Asserts that the stage of the {@link ArrivalRateRunner} sustained its arrival rate.
+   * If any request is dropped because of the in-flight limit, any request is failed or the 99th percentile
+   * of the latency exceeds the budget, an {@link AssertionError} with the full percentiles table is thrown.
+   * The assert also fails if more than 1% of the requests are sent late, since the rate isn't really applied then.
+   * @param result result of the stage
+   * @param p99 budget for the 99th percentile of the latency
+   */
+  public static void assertSustainsRate(ArrivalRateResult result, Duration p99){
+    StringBuilder violations = new StringBuilder();
+    checkLatency(result, 99, p99, violations);
+    if (result.getDropped() > 0)
+      violations.append(", ").append(result.getDropped()).append(" requests dropped by in-flight limit");
+    if (result.getFailed() > 0)
+      violations.append(", ").append(result.getFailed()).append(" requests failed");
+    if (result.getLate() * 100 > result.getScheduled())
+      violations.append(", ").append(result.getLate()).append(" requests sent late by load generator");
+
+    if (violations.length() > 0)
+      throw new AssertionError(String.format(Locale.US, "Rate %.1f requests/s isn't sustained:", result.getTargetRate()) +
+          violations.substring(1) + "\n" + result);
+  }
+
+  /**
+   * Benchmarks the GET requests to the resource with the default settings of the {@link Benchmark}: the warm-up
+   * iterations are followed by the measured batches until the means of the last batches are stable.
+   * The requests are executed one after another, so the result shows the latency of the unloaded server.
+   * <pre>
+   *   BenchmarkResult result = benchmark("/service/status");
+   *   assertMeanLatencyBelow(result, Duration.ofMillis(5));
+   * </pre>
+   * Use {@link Benchmark} directly to change the warm-up, the stop rule or the confidence level.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @return result of the benchmark
+   */
+  public static BenchmarkResult benchmark(String resource){
+    return new Benchmark(LoadRunner.httpGet(normalizeUrl(resource))).run();
+  }
+
+  /**
+   * Asserts that the mean latency of the benchmark is below the budget with the confidence of the benchmark,
+   * i.e. the upper bound of the confidence interval is below the budget.
+   * If it isn't, any iteration is failed or the measurement isn't stable, an {@link AssertionError} with
+   * the full result is thrown.
+   * @param result result of the {@link Benchmark}
+   * @param budget maximal mean latency
+   */
+  public static void assertMeanLatencyBelow(BenchmarkResult result, Duration budget){
+    if (result.getFailed() > 0)
+      throw new AssertionError(result.getFailed() + " benchmark iterations failed\n" + result);
+    if (!result.isStable())
+      throw new AssertionError("Benchmark didn't reach the steady state\n" + result);
+    if (result.getUpperBound() >= budget.toNanos())
+      throw new AssertionError(String.format(Locale.US, "Mean latency is %.3f ms with upper bound %.3f ms, expected below %.3f ms%n",
+          result.getMean() / 1e6, result.getUpperBound() / 1e6, budget.toNanos() / 1e6) + result);
+  }
+
+  /**
+   * Asserts that neither the median latency nor the error rate of the soak test drifts upward between the time
+   * windows with the significance of 0.05. If any of them does, an {@link AssertionError} with the windows table is thrown.
+   * <pre>
+   *   SoakRunner runner = new SoakRunner(LoadRunner.httpGet("/service/status"));
+   *   runner.setDuration(Duration.ofMinutes(30));
+   *   assertNoDrift(runner.run());
+   * </pre>
+   * @param result result of the {@link SoakRunner}
+   */
+  public static void assertNoDrift(SoakResult result){
+    assertNoLatencyDrift(result, 50, 0.05);
+    assertNoErrorRateDrift(result, 0.05);
+  }
+
+  /**
+   * Asserts that the latency of the soak test at the given percentile doesn't drift upward between the time windows,
+   * i.e. the Mann-Kendall trend test doesn't find the upward trend with the given significance.
+   * If it does, an {@link AssertionError} with the trend and the windows table is thrown.
+   * @param result result of the {@link SoakRunner}
+   * @param percentile percentile in range 0..100
+   * @param significance significance level of the test, like 0.05
+   */
+  public static void assertNoLatencyDrift(SoakResult result, double percentile, double significance){
+    Trend trend = result.getLatencyTrend(percentile);
+    if (trend.isIncreasing(significance))
+      throw new AssertionError(String.format(Locale.US, "Latency at %s%% drifts upward by %.3f ms per window (%s)%n",
+          percentile, trend.getSlope() / 1e6, trend) + result.toWindowTable());
+  }
+
+  /**
+   * Asserts that the error rate of the soak test doesn't drift upward between the time windows, i.e. the Mann-Kendall
+   * trend test doesn't find the upward trend with the given significance.
+   * If it does, an {@link AssertionError} with the trend, the first errors and the windows table is thrown.
+   * @param result result of the {@link SoakRunner}
+   * @param significance significance level of the test, like 0.05
+   */
+  public static void assertNoErrorRateDrift(SoakResult result, double significance){
+    Trend trend = result.getErrorRateTrend();
+    if (trend.isIncreasing(significance))
+      throw new AssertionError(String.format(Locale.US, "Error rate drifts upward by %.3f%% per window (%s)%n",
+          trend.getSlope() * 100, trend) + result);
+  }
+
+  /**
+   * Asserts that the digest of the http query result content is equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The digest is calculated while the content is read, so with the streaming enabled by
+   * {@link TestRequest#setStreaming(boolean)} the content of any size is checked in constant memory.
+   * Use this method to make a set of asserts for a single request.
+   * To just check the result content for request, use {@link com.brokenevent.nanotests.HttpAssert#assertHttpContentDigest(String, String, String)}.
+   * @param request {@link TestRequest} to get result from
+   * @param algorithm digest algorithm like <code>SHA-256</code>, <code>MD5</code> or <code>CRC32</code>
+   * @param expectedHex expected digest as a hex string
+   */
+  public static void assertHttpContentDigest(TestRequest request, String algorithm, String expectedHex){
+    ContentDigest digest = new ContentDigest(algorithm);
+    digest.update(request.getContent());
+    String actual = digest.toHex();
+    if (!actual.equalsIgnoreCase(expectedHex))
+      throw new AssertionError(algorithm + " of " + request.getRequestUrl() + " content (" + digest.getLength() +
+          " bytes) is " + actual + ", expected " + expectedHex);
+  }
+
+  /**
+   * Asserts that the digest of the http query result content is equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The digest is calculated while the content is read, so the content of any size is checked in constant memory.
+   * Use this method to assert the single request. If there are some checks for single URL, use {@link TestRequest} descendants:
+   * <pre>
+   *   TestGetRequest getRequest = new TestGetRequest(url);
+   *   getRequest.execute();
+   *
+   *   assertHttpCode(getRequest, 200);
+   *   assertHttpContentDigest(getRequest, "SHA-256", expectedHex);
+   *   // some more asserts
+   * </pre>
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param algorithm digest algorithm like <code>SHA-256</code>, <code>MD5</code> or <code>CRC32</code>
+   * @param expectedHex expected digest as a hex string
+   */
+  public static void assertHttpContentDigest(String resource, String algorithm, String expectedHex){
+    TestGetRequest request = new TestGetRequest(resource);
+    request.setStreaming(true);
+    request.execute();
+    try {
+      assertHttpOk(request);
+      assertHttpContentDigest(request, algorithm, expectedHex);
+    } finally {
+      request.release();
+    }
+  }
+
+  /**
+   * Asserts that the http query result content is equal to the content of the file. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The file is memory-mapped and compared while the response content is read, so neither of them is copied to the heap.
+   * Use this method to assert the single request. If there are some checks for single URL, use {@link TestRequest} descendants:
+   * <pre>
+   *   TestGetRequest getRequest = new TestGetRequest(url);
+   *   getRequest.execute();
+   *
+   *   assertHttpCode(getRequest, 200);
+   *   assertHttpContent(getRequest, expectedFile);
+   *   // some more asserts
+   * </pre>
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param expectedFile file with the expected content
+   */
+  public static void assertHttpContent(String resource, Path expectedFile){
+    TestGetRequest request = new TestGetRequest(resource);
+    request.setStreaming(true);
+    request.execute();
+    try {
+      assertHttpOk(request);
+      assertHttpContent(request, expectedFile);
+    } finally {
+      request.release();
+    }
+  }
+
+  /**
+   * Reads the content of the request to the end.
+   * @return length of the plain content
+   */
+  private static long readContent(TestRequest request){
+    byte[] buffer = new byte[8192];
+    long length = 0;
+    try (InputStream stream = request.getContent()) {
+      int read;
+      while ((read = stream.read(buffer)) != -1)
+        length += read;
+    } catch (IOException e) {
+      throw new AssertionError("Failed to get content", e);
+    }
+    return length;
+  }
+
+  private static String describeCompression(TestRequest request, long plainLength){
+    Header encoding = request.getResponse().getLastHeader("Content-Encoding");
+    return String.format(Locale.US, "%s: %d bytes on the wire, %d bytes of content, encoding %s",
+        request.getRequestUrl(), request.getWireContentLength(), plainLength, encoding == null ? "none" : encoding.getValue());
+  }
+
+  /**
+   * Asserts that the size of the http query result content on the wire is less or equal to the expected value.
+   * If it isn't, an {@link AssertionError} is thrown.<br>
+   * The request should not disable the compression, which is enabled by default
+   * (see {@link com.brokenevent.nanotests.http.TestRequestImpl#setCompression(boolean)}).
+   * The content is read to the end by this assert.
+   * @param request {@link TestRequest} to get result from
+   * @param bytes maximum size of the content on the wire
+   */
+  public static void assertHttpCompressedBelow(TestRequest request, long bytes){
+    long plainLength = readContent(request);
+    if (request.getWireContentLength() > bytes)
+      throw new AssertionError("Compressed content is larger than " + bytes + " bytes. " + describeCompression(request, plainLength));
+  }
+
+  /**
+   * Asserts that the size of the compressed http query result content on the wire is less or equal to the expected value.
+   * If it isn't, an {@link AssertionError} is thrown.<br>
+   * The GET request is executed with the default <code>gzip</code> and <code>deflate</code> compression.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param bytes maximum size of the content on the wire
+   */
+  public static void assertHttpCompressedBelow(String resource, long bytes){
+    TestGetRequest request = new TestGetRequest(resource);
+    request.execute();
+    assertHttpOk(request);
+    assertHttpCompressedBelow(request, bytes);
+  }
+
+  /**
+   * Asserts that the compression ratio (size of the plain content divided by the size on the wire) of the http query
+   * result is greater or equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The request should not disable the compression, which is enabled by default
+   * (see {@link com.brokenevent.nanotests.http.TestRequestImpl#setCompression(boolean)}).
+   * The content is read to the end by this assert.
+   * @param request {@link TestRequest} to get result from
+   * @param ratio minimum compression ratio
+   */
+  public static void assertHttpCompressionRatioAtLeast(TestRequest request, double ratio){
+    long plainLength = readContent(request);
+    long wireLength = request.getWireContentLength();
+    double actual = wireLength == 0 ? (plainLength == 0 ? 1 : Double.POSITIVE_INFINITY) : (double)plainLength / wireLength;
+    if (actual < ratio)
+      throw new AssertionError(String.format(Locale.US, "Compression ratio is %.2f, expected at least %.2f. ", actual, ratio) +
+          describeCompression(request, plainLength));
+  }
+
+  /**
+   * Asserts that the compression ratio (size of the plain content divided by the size on the wire) of the http query
+   * result is greater or equal to the expected value. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The GET request is executed with the default <code>gzip</code> and <code>deflate</code> compression.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param ratio minimum compression ratio
+   */
+  public static void assertHttpCompressionRatioAtLeast(String resource, double ratio){
+    TestGetRequest request = new TestGetRequest(resource);
+    request.execute();
+    assertHttpOk(request);
+    assertHttpCompressionRatioAtLeast(request, ratio);
+  }
+
+  /**
+   * Asserts that the http query result can be stored by the shared caches (proxies and CDNs). If it can't, an {@link AssertionError} is thrown.<br>
+   * The response can't be stored if its <code>Cache-Control</code> header has the <code>no-store</code> directive or
+   * the <code>private</code> directive without the field names, or if its <code>Vary</code> header is <code>*</code>.
+   * @param request {@link TestRequest} to get result from
+   */
+  public static void assertHttpSharedCacheable(TestRequest request){
+    HttpResponse response = request.getResponse();
+    for (Header header: response.getHeaders("Cache-Control"))
+      for (HeaderElement directive: header.getElements()){
+        String name = directive.getName().toLowerCase(Locale.ROOT);
+        if (name.equals("no-store") || (name.equals("private") && directive.getValue() == null))
+          throw new AssertionError("Response for " + request.getRequestUrl() + " can't be stored by shared caches: Cache-Control: " + header.getValue());
+      }
+
+    for (Header header: response.getHeaders("Vary"))
+      for (HeaderElement field: header.getElements())
+        if (field.getName().equals("*"))
+          throw new AssertionError("Response for " + request.getRequestUrl() + " can't be reused by shared caches: Vary: " + header.getValue());
+  }
+
+  /**
+   * Asserts that the http query result can be stored by the shared caches (proxies and CDNs). If it can't, an {@link AssertionError} is thrown.<br>
+   * See {@link #assertHttpSharedCacheable(TestRequest)} for the checked headers.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   */
+  public static void assertHttpSharedCacheable(String resource){
+    TestGetRequest request = new TestGetRequest(normalizeUrl(resource));
+    request.execute();
+    request.release();
+    assertHttpOk(request);
+    assertHttpSharedCacheable(request);
+  }
+
+  /**
+   * Asserts that the resource supports the revalidation. If it doesn't, an {@link AssertionError} is thrown.<br>
+   * The GET request is executed once and its response should be OK (200), have the <code>ETag</code> or
+   * <code>Last-Modified</code> validator and be cacheable by the shared caches ({@link #assertHttpSharedCacheable(TestRequest)}).
+   * Then the request is repeated with <code>If-None-Match</code> and <code>If-Modified-Since</code> headers made from
+   * the validators, one header at a time. The responses should be Not Modified (304) without content and with the same
+   * <code>ETag</code> if it is sent.
+   * <pre>
+   *   assertHttpRevalidates("/static/app.js");
+   * </pre>
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   */
+  public static void assertHttpRevalidates(String resource){
+    resource = normalizeUrl(resource);
+    TestGetRequest request = new TestGetRequest(resource);
+    request.execute();
+    request.release();
+    assertHttpOk(request);
+    assertHttpSharedCacheable(request);
+
+    Header etag = request.getResponse().getFirstHeader("ETag");
+    Header lastModified = request.getResponse().getFirstHeader("Last-Modified");
+    if (etag == null && lastModified == null)
+      throw new AssertionError("Response for " + request.getRequestUrl() + " has neither ETag nor Last-Modified");
+
+    if (etag != null)
+      checkNotModified(resource, "If-None-Match", etag.getValue(), etag.getValue());
+    if (lastModified != null)
+      checkNotModified(resource, "If-Modified-Since", lastModified.getValue(), etag != null ? etag.getValue() : null);
+  }
+
+  /**
+   * Asserts that the resource is Not Modified (304) for the given entity tag. If it isn't, an {@link AssertionError} is thrown.<br>
+   * The GET request is executed with <code>If-None-Match</code> header. The response should be Not Modified (304)
+   * without content.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @param etag entity tag with the quotes, like <code>"v1"</code>
+   */
+  public static void assertHttpNotModified(String resource, String etag){
+    checkNotModified(normalizeUrl(resource), "If-None-Match", etag, null);
+  }
+
+  private static void checkNotModified(String resource, String name, String value, String etag){
+    TestGetRequest request = new TestGetRequest(resource);
+    request.setHeader(name, value);
+    request.execute();
+    byte[] content = request.getBytes();
+
+    String condition = request.getRequestUrl() + " with " + name + ": " + value;
+    int code = request.getResponse().getStatusLine().getStatusCode();
+    if (code != 304)
+      throw new AssertionError("Response for " + condition + " is " + code + ", expected 304");
+    if (content.length > 0)
+      throw new AssertionError("Not Modified response for " + condition + " has " + content.length + " bytes of content");
+
+    Header replayed = request.getResponse().getFirstHeader("ETag");
+    if (etag != null && replayed != null && !etag.equals(replayed.getValue()))
+      throw new AssertionError("Not Modified response for " + condition + " has ETag " + replayed.getValue() + ", expected " + etag);
+  }
+
+  /**
+   * Asserts that all the nodes return the same status and the same content for the request. If they don't or any
+   * request failed, an {@link AssertionError} with the table of the responses is thrown.<br>
+   * The request is executed if it isn't executed yet.
+   * @param request request to the nodes
+   */
+  public static void assertNodesAgree(MultiNodeRequest request){
+    if (request.getRequests().isEmpty())
+      request.execute();
+
+    if (!request.getErrors().isEmpty())
+      throw new AssertionError(request.getErrors().size() + " nodes failed to respond\n" + request);
+
+    Set<Integer> codes = new HashSet<Integer>();
+    for (TestRequest node: request.getRequests().values())
+      codes.add(node.getResponse().getStatusLine().getStatusCode());
+    if (codes.size() > 1)
+      throw new AssertionError("Nodes return different status\n" + request);
+
+    if (new HashSet<String>(request.getDigests().values()).size() > 1)
+      throw new AssertionError("Nodes return different content\n" + request);
+  }
+
+  /**
+   * Asserts that all the nodes return the same status and the same content for the GET request. If they don't or any
+   * request failed, an {@link AssertionError} with the table of the responses is thrown.<br>
+   * The requests to the nodes are executed in parallel.
+   * <pre>
+   *   assertNodesAgree(Arrays.asList("http://node1:8080", "http://node2:8080"), "/service/config");
+   * </pre>
+   * @param hostUrls URLs of the nodes
+   * @param resource URL for the request (<code>/resource</code>)
+   */
+  public static void assertNodesAgree(Collection<String> hostUrls, String resource){
+    assertNodesAgree(MultiNodeRequest.get(hostUrls, normalizeUrl(resource)));
+  }
+
+  /**
+   * Asserts that the latency of the request to every node is less than expected. If it isn't, an {@link AssertionError}
+   * with the table of the responses is thrown.<br>
+   * The request is executed if it isn't executed yet.
+   * @param request request to the nodes
+   * @param budget maximum latency of the node
+   */
+  public static void assertNodeLatencyBelow(MultiNodeRequest request, Duration budget){
+    if (request.getRequests().isEmpty())
+      request.execute();
+
+    StringBuilder slow = new StringBuilder();
+    for (Map.Entry<String, TestRequest> entry: request.getRequests().entrySet()){
+      RequestTimings timings = entry.getValue().getTimings();
+      if (request.getErrors().containsKey(entry.getKey()) || timings == null || timings.getTotalTime() >= budget.toNanos())
+        slow.append(", ").append(entry.getKey());
+    }
+
+    if (slow.length() > 0)
+      throw new AssertionError(String.format(Locale.US, "Latency of the nodes is above %.3f ms: ", budget.toNanos() / 1e6) +
+          slow.substring(2) + "\n" + request);
+  }
+
+  /**
+   * Resets the connection statistics of the {@link HttpClientPool} of the current {@link TestContext}. Use it before the block of the asserts
+   * checked by {@link #assertMaxConnectionsOpened(int)}:
+   * <pre>
+   *   resetConnectionStats();
+   *   assertHttpOk("/a");
+   *   assertHttpOk("/b");
+   *   assertMaxConnectionsOpened(1);
+   * </pre>
+   */
+  public static void resetConnectionStats(){
+    TestContext.current().getPool().resetConnectionStats();
+  }
+
+  /**
+   * Asserts that the request is sent over the keep-alive connection from the pool. If it isn't, an {@link AssertionError}
+   * is thrown.<br>
+   * The connection isn't reused if the previous response closed it (<code>Connection: close</code>, HTTP/1.0 response
+   * or the content without length) or if the request is the first one to the host.
+   * @param request {@link TestRequest} to get result from
+   */
+  public static void assertConnectionReused(TestRequest request){
+    RequestTimings timings = request.getTimings();
+    Assert.assertNotNull("Request " + request.getRequestUrl() + " isn't executed", timings);
+    if (!timings.isConnectionReused())
+      throw new AssertionError("Request " + request.getRequestUrl() + " opened a new connection\n" +
+          request.getContext().getPool().getConnectionStats(request.getHostUrl()));
+  }
+
+  /**
+   * Asserts that the requests to all the hosts opened no more than the given count of the connections since the
+   * statistics are reset by {@link #resetConnectionStats()}. If they opened more, an {@link AssertionError} with
+   * the statistics of every host is thrown.
+   * @param count maximum count of the opened connections
+   */
+  public static void assertMaxConnectionsOpened(int count){
+    HttpClientPool pool = TestContext.current().getPool();
+    ConnectionStats total = pool.getConnectionStats();
+    if (total.getOpened() > count){
+      StringBuilder hosts = new StringBuilder();
+      for (ConnectionStats stats: pool.getConnectionStatsByHost())
+        hosts.append("\n").append(stats);
+      throw new AssertionError("Requests opened " + total.getOpened() + " connections, expected at most " + count + hosts);
+    }
+  }
+
+  /**
+   * Asserts that the requests to the host opened no more than the given count of the connections since the
+   * statistics are reset by {@link #resetConnectionStats()}. If they opened more, an {@link AssertionError} with
+   * the statistics of the host is thrown.
+   * @param hostUrl URL of the host, like <code>http://localhost:8080</code>
+   * @param count maximum count of the opened connections
+   */
+  public static void assertMaxConnectionsOpened(String hostUrl, int count){
+    ConnectionStats stats = TestContext.current().getPool().getConnectionStats(hostUrl);
+    if (stats.getOpened() > count)
+      throw new AssertionError("Requests opened " + stats.getOpened() + " connections, expected at most " + count + "\n" + stats);
+  }
 }
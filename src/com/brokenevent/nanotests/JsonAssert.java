@@ -0,0 +1,232 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests;
+
+import com.brokenevent.nanotests.http.TestRequest;
+import com.brokenevent.nanotests.json.JsonPath;
+import com.brokenevent.nanotests.json.JsonReader;
+import com.brokenevent.nanotests.json.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JSON-related asserts helper. The paths are JSONPath expressions (see {@link JsonPath} for the supported subset),
+ * which are evaluated by the streaming parser without building the document tree.
+ * By default the response content is cached by the request when it is executed, so any count of the asserts can
+ * check the same request, but the whole document is downloaded and kept in memory. For the large responses enable
+ * the streaming by {@link TestRequest#setStreaming(boolean)} before the request is executed. Then the content is
+ * parsed directly from the connection and read only while the path can match, and then the connection is closed,
+ * so the assert on the beginning of the large document is cheap:
+ * <pre>
+ *    TestGetRequest request = new TestGetRequest("/export/items");
+ *    request.setStreaming(true);
+ *    request.execute();
+ *    assertJsonValue(request, "$[0].id", "1");
+ * </pre>
+ * The streamed content can be read only once, so the single assert can be used for such request.
+ * These methods can be used directly:
+ * <code>JsonAssert.assertJsonValue(...)</code>, however, they read better if they
+ * are referenced through static import:
+ *
+ * <pre>
+ * import static com.brokenevent.nanotests.JsonAssert.*;
+ *    ...
+ *    assertJsonValue(request, "$.items[0].id", "42");
+ * </pre>
+ *
+ * The values are compared as text: the strings are unescaped, the numbers and booleans are compared as they are
+ * written in the document, <code>null</code> is compared as <code>null</code>, and the objects and arrays are compared
+ * as the compact JSON text.
+ * @author BrokenEvent
+ */
+public final class JsonAssert {
+  /**
+   * Protect constructor since it is a static only class
+   */
+  protected JsonAssert(){}
+
+  /**
+   * Asserts that the first value found by the path is equal to the given value. If it isn't, an {@link AssertionError} is thrown.
+   * The content is read only up to the found value.
+   * @param request executed {@link TestRequest} to read the content from
+   * @param path JSONPath expression to find the value
+   * @param expected expected value
+   */
+  public static void assertJsonValue(TestRequest request, String path, String expected){
+    final JsonPath jsonPath = compile(path);
+    List<String> values = evaluate(request, reader -> jsonPath.select(reader, 1));
+    checkValue(values, jsonPath, expected);
+  }
+
+  /**
+   * Asserts that the first value found by the path is equal to the given value. If it isn't, an {@link AssertionError} is thrown.
+   * @param content text of the JSON document
+   * @param path JSONPath expression to find the value
+   * @param expected expected value
+   */
+  public static void assertJsonValue(String content, String path, String expected){
+    final JsonPath jsonPath = compile(path);
+    List<String> values = evaluate(content, reader -> jsonPath.select(reader, 1));
+    checkValue(values, jsonPath, expected);
+  }
+
+  /**
+   * Asserts that the count of the values found by the path is equal to the given value. If it isn't, an {@link AssertionError} is thrown.
+   * The reading stops as soon as the count is exceeded.
+   * @param request executed {@link TestRequest} to read the content from
+   * @param path JSONPath expression to find the values
+   * @param expectedCount expected count of the values
+   */
+  public static void assertJsonCount(TestRequest request, String path, int expectedCount){
+    final JsonPath jsonPath = compile(path);
+    int count = evaluate(request, reader -> jsonPath.count(reader, expectedCount + 1));
+    checkCount(count, jsonPath, expectedCount);
+  }
+
+  /**
+   * Asserts that the count of the values found by the path is equal to the given value. If it isn't, an {@link AssertionError} is thrown.
+   * @param content text of the JSON document
+   * @param path JSONPath expression to find the values
+   * @param expectedCount expected count of the values
+   */
+  public static void assertJsonCount(String content, String path, int expectedCount){
+    final JsonPath jsonPath = compile(path);
+    int count = evaluate(content, reader -> jsonPath.count(reader, expectedCount + 1));
+    checkCount(count, jsonPath, expectedCount);
+  }
+
+  /**
+   * Asserts that the path finds any value, including <code>null</code>. If it doesn't, an {@link AssertionError} is thrown.
+   * The content is read only up to the found value.
+   * @param request executed {@link TestRequest} to read the content from
+   * @param path JSONPath expression to find the value
+   */
+  public static void assertJsonExists(TestRequest request, String path){
+    final JsonPath jsonPath = compile(path);
+    if (evaluate(request, reader -> jsonPath.count(reader, 1)) == 0)
+      throw new AssertionError("No value at " + jsonPath);
+  }
+
+  /**
+   * Asserts that the path finds any value, including <code>null</code>. If it doesn't, an {@link AssertionError} is thrown.
+   * @param content text of the JSON document
+   * @param path JSONPath expression to find the value
+   */
+  public static void assertJsonExists(String content, String path){
+    final JsonPath jsonPath = compile(path);
+    if (evaluate(content, reader -> jsonPath.count(reader, 1)) == 0)
+      throw new AssertionError("No value at " + jsonPath);
+  }
+
+  /**
+   * Asserts that the path finds no value. If it finds, an {@link AssertionError} is thrown.
+   * @param request executed {@link TestRequest} to read the content from
+   * @param path JSONPath expression to find the value
+   */
+  public static void assertJsonNotExists(TestRequest request, String path){
+    final JsonPath jsonPath = compile(path);
+    if (evaluate(request, reader -> jsonPath.count(reader, 1)) > 0)
+      throw new AssertionError("Unexpected value at " + jsonPath);
+  }
+
+  /**
+   * Asserts that the path finds no value. If it finds, an {@link AssertionError} is thrown.
+   * @param content text of the JSON document
+   * @param path JSONPath expression to find the value
+   */
+  public static void assertJsonNotExists(String content, String path){
+    final JsonPath jsonPath = compile(path);
+    if (evaluate(content, reader -> jsonPath.count(reader, 1)) > 0)
+      throw new AssertionError("Unexpected value at " + jsonPath);
+  }
+
+  private static void checkValue(List<String> values, JsonPath path, String expected){
+    if (values.isEmpty())
+      throw new AssertionError("No value at " + path);
+    assertEquals("Value at " + path, expected, values.get(0));
+  }
+
+  private static void checkCount(int count, JsonPath path, int expectedCount){
+    if (count > expectedCount)
+      throw new AssertionError("Count of the values at " + path + " is more than " + expectedCount);
+    assertEquals("Count of the values at " + path, expectedCount, count);
+  }
+
+  private static JsonPath compile(String path){
+    try {
+      return JsonPath.compile(path);
+    } catch (IllegalArgumentException ex) {
+      throw new AssertionError("JSONPath parsing error", ex);
+    }
+  }
+
+  private static <T> T evaluate(String content, Evaluation<T> evaluation){
+    try {
+      return evaluation.evaluate(new JsonReader(new StringReader(content)));
+    } catch (IOException ex) {
+      throw new AssertionError("JSON parsing error", ex);
+    }
+  }
+
+  /**
+   * Evaluates the path over the response content. If the content is streamed and the evaluation stops before
+   * the end of the document, the request is aborted to close the connection without reading the rest of the content.
+   */
+  private static <T> T evaluate(TestRequest request, Evaluation<T> evaluation){
+    if (request.getResponse() == null)
+      throw new AssertionError("Request " + request.getRequestUrl() + " isn't executed");
+
+    InputStream stream = request.getContent();
+    JsonReader reader = new JsonReader(new InputStreamReader(stream, request.getCharset()));
+    try {
+      T result = evaluation.evaluate(reader);
+      // the root value is read completely, so only the end of the document is left
+      if (reader.getToken() != JsonToken.END_DOCUMENT && reader.getDepth() == 0)
+        reader.next();
+      if (reader.getToken() != JsonToken.END_DOCUMENT && request.isStreaming())
+        request.abort();
+      return result;
+    } catch (IOException ex) {
+      request.abort();
+      throw new AssertionError("JSON parsing error in " + request.getRequestUrl(), ex);
+    } finally {
+      try {
+        stream.close();
+      } catch (IOException ex) {
+        // the connection is aborted
+      }
+    }
+  }
+
+  private interface Evaluation<T> {
+    T evaluate(JsonReader reader) throws IOException;
+  }
+}
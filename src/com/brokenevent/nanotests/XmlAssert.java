@@ -24,6 +24,7 @@
 
 package com.brokenevent.nanotests;
 
+import com.brokenevent.nanotests.xml.XPathCache;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -48,6 +49,7 @@ import static org.junit.Assert.assertEquals;
  *    assertElementContent(...);
  * </pre>
  *
+ * The compiled XPath expressions are cached by {@link XPathCache} and shared by all the threads.
  * @author BrokenEvent
  */
 public final class XmlAssert {
@@ -81,10 +83,7 @@ public final class XmlAssert {
    */
   public static void assertElementContent(Document doc, String path, String expected) {
     try{
-      XPathFactory xPathfactory = XPathFactory.newInstance();
-      XPath xpath = xPathfactory.newXPath();
-      XPathExpression expression = xpath.compile(path);
-      assertEquals(expected, expression.evaluate(doc, XPathConstants.STRING));
+      assertEquals(expected, XPathCache.evaluate(path, doc, XPathConstants.STRING));
     }catch (XPathExpressionException ex){
       throw new AssertionError("XPath parsing error", ex);
     }
@@ -98,10 +97,7 @@ public final class XmlAssert {
    */
   public static void assertElementName(Document doc, String path, String expected) {
     try{
-      XPathFactory xPathfactory = XPathFactory.newInstance();
-      XPath xpath = xPathfactory.newXPath();
-      XPathExpression expression = xpath.compile(path);
-      assertEquals(expected, ((Node)expression.evaluate(doc, XPathConstants.NODE)).getNodeName());
+      assertEquals(expected, ((Node)XPathCache.evaluate(path, doc, XPathConstants.NODE)).getNodeName());
     }catch (XPathExpressionException ex){
       throw new AssertionError("XPath parsing error", ex);
     }
@@ -116,10 +112,7 @@ public final class XmlAssert {
    */
   public static void assertElementsCount(Document doc, String path, int expectedCount) {
     try{
-      XPathFactory xPathfactory = XPathFactory.newInstance();
-      XPath xpath = xPathfactory.newXPath();
-      XPathExpression expression = xpath.compile(path);
-      assertEquals(expectedCount, ((NodeList)expression.evaluate(doc, XPathConstants.NODESET)).getLength());
+      assertEquals(expectedCount, ((NodeList)XPathCache.evaluate(path, doc, XPathConstants.NODESET)).getLength());
     }catch (XPathExpressionException ex){
       throw new AssertionError("XPath parsing error", ex);
     }
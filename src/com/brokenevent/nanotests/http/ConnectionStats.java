@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.HttpHost;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection statistics of the single host collected by the {@link HttpClientPool}. The request which got
+ * the new connection counts as opened one, the request which got the keep-alive connection from the pool
+ * counts as reused one. The bytes are counted on the socket level, so the request and response heads are included.
+ * @author BrokenEvent
+ */
+public class ConnectionStats {
+  private final String host;
+  private final AtomicLong opened = new AtomicLong();
+  private final AtomicLong reused = new AtomicLong();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+
+  ConnectionStats(String host) {
+    this.host = host;
+  }
+
+  /**
+   * Makes the key of the host with the default port of the scheme, so <code>http://localhost</code> and
+   * <code>http://localhost:80</code> are the same host.
+   * @param host http host
+   * @return key of the host
+   */
+  static String key(HttpHost host){
+    int port = host.getPort();
+    if (port < 0)
+      port = "https".equalsIgnoreCase(host.getSchemeName()) ? 443 : 80;
+    return host.getSchemeName().toLowerCase(Locale.ROOT) + "://" + host.getHostName().toLowerCase(Locale.ROOT) + ":" + port;
+  }
+
+  void connection(boolean reused){
+    if (reused)
+      this.reused.incrementAndGet();
+    else
+      opened.incrementAndGet();
+  }
+
+  void bytes(long sent, long received){
+    bytesSent.addAndGet(sent);
+    bytesReceived.addAndGet(received);
+  }
+
+  void add(ConnectionStats other){
+    opened.addAndGet(other.getOpened());
+    reused.addAndGet(other.getReused());
+    bytes(other.getBytesSent(), other.getBytesReceived());
+  }
+
+  /**
+   * Gets the host of the statistics, like <code>http://localhost:80</code>.
+   * @return host of the statistics
+   */
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * Gets the count of the opened connections.
+   * @return count of the opened connections
+   */
+  public long getOpened() {
+    return opened.get();
+  }
+
+  /**
+   * Gets the count of the requests which reused the keep-alive connection.
+   * @return count of the reused connections
+   */
+  public long getReused() {
+    return reused.get();
+  }
+
+  /**
+   * Gets the count of the executed requests.
+   * @return count of the requests
+   */
+  public long getRequests() {
+    return getOpened() + getReused();
+  }
+
+  /**
+   * Gets the part of the requests which reused the keep-alive connection.
+   * @return reuse ratio in range 0..1
+   */
+  public double getReuseRatio() {
+    long requests = getRequests();
+    return requests == 0 ? 0 : (double)getReused() / requests;
+  }
+
+  /**
+   * Gets the count of the bytes sent to the host.
+   * @return count of the sent bytes
+   */
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /**
+   * Gets the count of the bytes received from the host.
+   * @return count of the received bytes
+   */
+  public long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "%s: %d requests, %d connections opened, %d reused, %d bytes sent, %d bytes received",
+        host, getRequests(), getOpened(), getReused(), getBytesSent(), getBytesReceived());
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the content stream with the expected content while it is read.
+ * The comparison stops on the first mismatching byte and the memory usage doesn't depend on the content size.
+ * <pre>
+ *   ContentComparator comparator = new ContentComparator(stream);
+ *   comparator.compare(ByteBuffer.wrap(expected));
+ *   comparator.assertEnd();
+ * </pre>
+ * @author BrokenEvent
+ */
+public class ContentComparator {
+  private static final int BUFFER_SIZE = 8192;
+  private static final int CONTEXT_SIZE = 16;
+
+  private final InputStream stream;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private boolean eof;
+  private long offset;
+
+  /**
+   * Initializes the comparator for the given content stream.
+   * @param stream actual content stream
+   */
+  public ContentComparator(InputStream stream) {
+    this.stream = stream;
+  }
+
+  /**
+   * Gets the count of the bytes which are compared successfully.
+   * @return count of the equal bytes
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Compares the next part of the stream with the remaining bytes of the given buffer.
+   * If the content differs or the stream is ended, an {@link AssertionError} is thrown.
+   * @param expected next part of the expected content
+   */
+  public void compare(ByteBuffer expected){
+    int start = expected.position();
+    while (expected.hasRemaining()){
+      if (position == limit && !fill())
+        throw new AssertionError("Content is shorter than expected. Content ended at offset " + offset +
+            "\nexpected: " + context(expected, start) + "\nactual:   " + actualContext(expected, start));
+
+      int count = Math.min(limit - position, expected.remaining());
+      for (int i = 0; i < count; i++){
+        if (buffer[position] != expected.get()){
+          expected.position(expected.position() - 1);
+          throw new AssertionError("Content differs at offset " + offset +
+              "\nexpected: " + context(expected, start) + "\nactual:   " + actualContext(expected, start));
+        }
+        position++;
+        offset++;
+      }
+    }
+  }
+
+  /**
+   * Asserts that the stream has no more content. If it has, an {@link AssertionError} is thrown.
+   */
+  public void assertEnd(){
+    if (position == limit && !fill())
+      return;
+
+    ByteBuffer empty = ByteBuffer.allocate(0);
+    throw new AssertionError("Content is longer than expected. Expected length is " + offset +
+        "\nactual: " + actualContext(empty, 0));
+  }
+
+  private boolean fill(){
+    try {
+      int read;
+      do
+        read = stream.read(buffer);
+      while (read == 0);
+
+      position = 0;
+      limit = Math.max(read, 0);
+      eof = read < 0;
+      return read > 0;
+    } catch (IOException e) {
+      throw new AssertionError("Failed to get content", e);
+    }
+  }
+
+  /**
+   * Reads ahead the stream to have more than {@link #CONTEXT_SIZE} bytes in buffer if the stream isn't ended,
+   * so the end of the stream right after the context is seen too.
+   */
+  private void readAhead(){
+    if (limit - position > CONTEXT_SIZE)
+      return;
+
+    System.arraycopy(buffer, position, buffer, 0, limit - position);
+    limit -= position;
+    position = 0;
+
+    try {
+      while (limit <= CONTEXT_SIZE) {
+        int read = stream.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+          eof = true;
+          break;
+        }
+        limit += read;
+      }
+    } catch (IOException e) {
+      // show what we have
+    }
+  }
+
+  private String context(ByteBuffer expected, int start){
+    int end = Math.min(expected.limit(), expected.position() + CONTEXT_SIZE);
+    return format(expected, start, expected.position(), end);
+  }
+
+  private String actualContext(ByteBuffer expected, int start){
+    readAhead();
+    StringBuilder builder = new StringBuilder(format(expected, start, expected.position(), -1));
+    int end = Math.min(limit, position + CONTEXT_SIZE);
+    for (int i = position; i < end; i++)
+      append(builder, buffer[i]);
+    if (end == limit && eof)
+      builder.append("<EOF>");
+    return builder.toString();
+  }
+
+  /**
+   * Formats the bytes around the mismatch. The bytes before the mismatch are equal for both contents,
+   * so they are taken from the expected buffer.
+   */
+  private static String format(ByteBuffer expected, int start, int mismatch, int end){
+    StringBuilder builder = new StringBuilder();
+    int from = Math.max(start, mismatch - CONTEXT_SIZE);
+    if (from > 0)
+      builder.append("...");
+    for (int i = from; i < mismatch; i++)
+      append(builder, expected.get(i));
+    builder.append(" >>> ");
+    if (end < 0)
+      return builder.toString();
+
+    for (int i = mismatch; i < end; i++)
+      append(builder, expected.get(i));
+    return builder.toString();
+  }
+
+  private static void append(StringBuilder builder, byte value){
+    if (value >= 0x20 && value < 0x7F)
+      builder.append((char)value);
+    else
+      builder.append(String.format("\\x%02X", value & 0xFF));
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Calculates the digest of the content while it is read. The content is read through the reusable per-thread
+ * buffer, so the memory usage doesn't depend on the content size.
+ * Supports all the {@link MessageDigest} algorithms (<code>SHA-256</code>, <code>MD5</code>, ...) and <code>CRC32</code>.
+ * @author BrokenEvent
+ */
+public class ContentDigest {
+  /**
+   * Name of the CRC32 checksum algorithm.
+   */
+  public static final String CRC32 = "CRC32";
+
+  private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>(){
+    @Override
+    protected byte[] initialValue() {
+      return new byte[65536];
+    }
+  };
+
+  private final String algorithm;
+  private final MessageDigest digest;
+  private final Checksum checksum;
+  private long length;
+
+  /**
+   * Initializes the digest calculation with the given algorithm.
+   * If the algorithm isn't supported, an {@link AssertionError} is thrown.
+   * @param algorithm name of the digest algorithm
+   */
+  public ContentDigest(String algorithm) {
+    this.algorithm = algorithm;
+    if (CRC32.equalsIgnoreCase(algorithm)){
+      digest = null;
+      checksum = new CRC32();
+      return;
+    }
+
+    try {
+      digest = MessageDigest.getInstance(algorithm);
+      checksum = null;
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("Unknown digest algorithm: " + algorithm, e);
+    }
+  }
+
+  /**
+   * Calculates the digest of the byte array and formats it as a hex string.
+   * @param data data to calculate the digest for
+   * @param algorithm name of the digest algorithm
+   * @return hex string of the digest
+   */
+  public static String digest(byte[] data, String algorithm){
+    ContentDigest digest = new ContentDigest(algorithm);
+    digest.update(data, 0, data.length);
+    return digest.toHex();
+  }
+
+  /**
+   * Gets the name of the digest algorithm.
+   * @return name of the digest algorithm
+   */
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Gets the count of the bytes processed.
+   * @return length of the content
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Adds the part of the byte array to the digest.
+   * @param data data array
+   * @param offset offset of the part
+   * @param count length of the part
+   */
+  public void update(byte[] data, int offset, int count){
+    if (digest != null)
+      digest.update(data, offset, count);
+    else
+      checksum.update(data, offset, count);
+    length += count;
+  }
+
+  /**
+   * Reads the stream to the end and adds its content to the digest.
+   * @param stream content stream
+   */
+  public void update(InputStream stream){
+    byte[] buffer = buffers.get();
+    try {
+      int read;
+      while ((read = stream.read(buffer)) != -1)
+        update(buffer, 0, read);
+    } catch (IOException e) {
+      throw new AssertionError("Failed to get content", e);
+    }
+  }
+
+  /**
+   * Formats the calculated digest as a lowercase hex string. The CRC32 value is formatted as 8 hex digits.
+   * @return hex string of the digest
+   */
+  public String toHex(){
+    if (digest == null)
+      return String.format("%08x", checksum.getValue());
+
+    StringBuilder builder = new StringBuilder();
+    for (byte value: digest.digest())
+      builder.append(String.format("%02x", value & 0xFF));
+    return builder.toString();
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer which aborts the requests when their deadlines pass. The single daemon thread is shared by all the requests.
+ * @author BrokenEvent
+ */
+final class DeadlineTimer {
+  private static final ScheduledThreadPoolExecutor timer;
+
+  static {
+    timer = new ScheduledThreadPoolExecutor(1, new HttpClientPool.DaemonThreadFactory("nanotests-deadline-"));
+    timer.setRemoveOnCancelPolicy(true);
+  }
+
+  private DeadlineTimer() {}
+
+  /**
+   * Schedules the task.
+   * @param task task to run when the deadline passes
+   * @param delay delay of the task in milliseconds
+   * @return future to cancel the task
+   */
+  static Future<?> schedule(Runnable task, long delay){
+    return timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+  }
+}
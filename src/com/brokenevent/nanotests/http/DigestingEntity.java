@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Request entity wrapper which calculates the digest of the content while it is sent. Used by the recording mode
+ * of the requests to identify the recorded request by its content without reading the content twice.
+ * @author BrokenEvent
+ */
+class DigestingEntity extends HttpEntityWrapper {
+  /**
+   * Name of the digest algorithm used for the request content.
+   */
+  static final String ALGORITHM = "SHA-256";
+
+  private volatile ContentDigest digest;
+
+  DigestingEntity(HttpEntity entity) {
+    super(entity);
+  }
+
+  /**
+   * Calculates the digest of the entity content by writing the content to the digest.
+   * The content isn't buffered, so the entity of any size takes constant memory.
+   * @param entity request entity
+   * @return hex string of the digest
+   */
+  static String digest(HttpEntity entity){
+    ContentDigest digest = new ContentDigest(ALGORITHM);
+    try {
+      entity.writeTo(new DigestOutputStream(null, digest));
+    } catch (IOException e) {
+      throw new AssertionError("Failed to get request content", e);
+    }
+    return digest.toHex();
+  }
+
+  @Override
+  public void writeTo(OutputStream stream) throws IOException {
+    // the entity may be written again if the request is retried, so the digest starts over
+    ContentDigest digest = new ContentDigest(ALGORITHM);
+    this.digest = digest;
+    super.writeTo(new DigestOutputStream(stream, digest));
+  }
+
+  /**
+   * Gets the digest of the sent content.
+   * @return hex string of the digest or <code>null</code> if the content isn't sent
+   */
+  String toHex(){
+    ContentDigest digest = this.digest;
+    return digest == null ? null : digest.toHex();
+  }
+
+  /**
+   * Output stream which adds the written data to the digest and passes it to the target stream if any.
+   */
+  private static class DigestOutputStream extends FilterOutputStream {
+    private final ContentDigest digest;
+
+    DigestOutputStream(OutputStream stream, ContentDigest digest) {
+      super(stream);
+      this.digest = digest;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      digest.update(new byte[] {(byte)b}, 0, 1);
+      if (out != null)
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int count) throws IOException {
+      digest.update(data, offset, count);
+      if (out != null)
+        out.write(data, offset, count);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (out != null)
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (out != null)
+        out.close();
+    }
+  }
+}
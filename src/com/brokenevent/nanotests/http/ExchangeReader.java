@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reader of the exchange store file written by {@link ExchangeWriter}. The file is memory-mapped and the index
+ * is built by reading only the keys of the records when the store is opened. The record cut by the end of the file
+ * (if the recording process is killed while writing it) is ignored. The responses are built on demand and their
+ * content is read directly from the mapped file.
+ * @author BrokenEvent
+ */
+class ExchangeReader {
+  private final Path path;
+  private final MappedByteBuffer buffer;
+  private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+  ExchangeReader(Path path) {
+    this.path = path;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE)
+        throw new AssertionError("Exchange store " + path + " can't be larger than 2 GB");
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new AssertionError("Failed to open exchange store " + path, e);
+    }
+
+    try {
+      if (buffer.remaining() < ExchangeWriter.HEADER_SIZE || buffer.getInt(0) != ExchangeWriter.MAGIC)
+        throw new AssertionError(path + " is not an exchange store");
+      if (buffer.getShort(4) != ExchangeWriter.VERSION)
+        throw new AssertionError("Unsupported version of the exchange store " + path + ": " + buffer.getShort(4));
+
+      int position = ExchangeWriter.HEADER_SIZE;
+      while (position <= buffer.limit() - 4) {
+        int length = buffer.getInt(position);
+        if (length < 0 || length > buffer.limit() - position - 4)
+          break;
+
+        position += 4;
+        index.put(readString(input(position)), position);
+        position += length;
+      }
+    } catch (IOException | RuntimeException e) {
+      throw new AssertionError("Exchange store " + path + " is corrupted", e);
+    }
+  }
+
+  /**
+   * Gets the count of the recorded responses.
+   * @return count of the recorded responses
+   */
+  int size() {
+    return index.size();
+  }
+
+  /**
+   * Builds the recorded response for the request key.
+   * @param key request key made by {@link ExchangeWriter#key(HttpRequest, String, HttpEntity, String)}
+   * @return recorded response or <code>null</code> if the request isn't recorded
+   */
+  HttpResponse read(String key) {
+    Integer offset = index.get(key);
+    if (offset == null)
+      return null;
+
+    try {
+      ByteBuffer record = buffer.duplicate();
+      record.position(offset);
+      DataInput input = new DataInputStream(new BufferInputStream(record));
+      readString(input); // key
+
+      ProtocolVersion version = new ProtocolVersion(HttpVersion.HTTP, input.readUnsignedByte(), input.readUnsignedByte());
+      BasicHttpResponse response = new BasicHttpResponse(version, input.readUnsignedShort(), readString(input));
+      int headers = input.readInt();
+      for (int i = 0; i < headers; i++)
+        response.addHeader(readString(input), readString(input));
+
+      int length = input.readInt();
+      if (length >= 0) {
+        record.limit(record.position() + length);
+        RecordedEntity entity = new RecordedEntity(record.slice());
+        entity.setContentType(response.getFirstHeader("Content-Type"));
+        entity.setContentEncoding(response.getFirstHeader("Content-Encoding"));
+        response.setEntity(entity);
+      }
+      return response;
+    } catch (IOException | RuntimeException e) {
+      throw new AssertionError("Exchange store " + path + " is corrupted", e);
+    }
+  }
+
+  private static String readString(DataInput input) throws IOException {
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private DataInput input(int offset) {
+    ByteBuffer data = buffer.duplicate();
+    data.position(offset);
+    return new DataInputStream(new BufferInputStream(data));
+  }
+
+  /**
+   * Repeatable entity with the content stored in the mapped file.
+   */
+  private static class RecordedEntity extends AbstractHttpEntity {
+    private final ByteBuffer content;
+
+    RecordedEntity(ByteBuffer content) {
+      this.content = content;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return true;
+    }
+
+    @Override
+    public long getContentLength() {
+      return content.remaining();
+    }
+
+    @Override
+    public InputStream getContent() {
+      return new BufferInputStream(content.duplicate());
+    }
+
+    @Override
+    public void writeTo(OutputStream stream) throws IOException {
+      ByteBuffer data = content.duplicate();
+      byte[] chunk = new byte[Math.min(8192, data.remaining())];
+      while (data.hasRemaining()) {
+        int count = Math.min(chunk.length, data.remaining());
+        data.get(chunk, 0, count);
+        stream.write(chunk, 0, count);
+      }
+    }
+
+    @Override
+    public boolean isStreaming() {
+      return false;
+    }
+  }
+
+  private static class BufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int count) {
+      if (count == 0)
+        return 0;
+      if (!buffer.hasRemaining())
+        return -1;
+
+      count = Math.min(count, buffer.remaining());
+      buffer.get(data, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
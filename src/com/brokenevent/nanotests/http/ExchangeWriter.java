@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer of the exchange store file used by the recording mode of the requests.
+ * <p>
+ * The file starts with the header (magic and version). The records follow the header, each one prefixed by its
+ * length, and hold the request key, the status line, the headers and the content of the response as it was received
+ * from the connection. The strings are written as the length-prefixed UTF-8 bytes, so the values of any length
+ * are stored. The records are only appended, so nothing is kept in memory and the file is readable at any time,
+ * even if the recording is never stopped. The index is rebuilt by {@link ExchangeReader} when the store is opened.
+ * The request key holds the method, the URL, the headers which select the representation and the digest of the
+ * request content, so the different contents posted to the same URL are recorded separately. If the same request
+ * is recorded again, the latest response is used.
+ * @author BrokenEvent
+ * @see ExchangeReader
+ */
+class ExchangeWriter {
+  static final int MAGIC = 0x4E545853; // NTXS
+  static final int VERSION = 3;
+  static final int HEADER_SIZE = 8;
+
+  private final Path path;
+  private final FileChannel channel;
+  private long position;
+
+  ExchangeWriter(Path path) {
+    this.path = path;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putShort((short)VERSION).putShort((short)0);
+      header.flip();
+      writeFully(header, 0);
+      position = HEADER_SIZE;
+    } catch (IOException e) {
+      throw new AssertionError("Failed to create exchange store " + path, e);
+    }
+  }
+
+  /**
+   * Headers of the request which are the part of the request key.
+   */
+  private static final String[] KEY_HEADERS = {"Accept", "Accept-Encoding", "Accept-Language", "Content-Type"};
+
+  /**
+   * Makes the request key from the request method, URL, headers and content digest.
+   * @param request request to make the key for
+   * @param url fully qualified request URL
+   * @param entity content of the request or <code>null</code> if the request has no content
+   * @param contentDigest digest of the request content made by {@link DigestingEntity}
+   *                      or <code>null</code> if the request has no content
+   * @return request key
+   */
+  static String key(HttpRequest request, String url, HttpEntity entity, String contentDigest) {
+    StringBuilder key = new StringBuilder(request.getRequestLine().getMethod()).append(' ').append(url);
+    for (String name: KEY_HEADERS) {
+      Header header = request.getFirstHeader(name);
+      // the content type of the entity is sent as the header if the request doesn't have it
+      if (header == null && entity != null && name.equals("Content-Type"))
+        header = entity.getContentType();
+      if (header != null)
+        key.append('\n').append(name).append(": ").append(header.getValue());
+    }
+    if (contentDigest != null)
+      key.append('\n').append(DigestingEntity.ALGORITHM).append(": ").append(contentDigest);
+    return key.toString();
+  }
+
+  /**
+   * Appends the response to the store.
+   * @param key request key
+   * @param response received response
+   * @param content content of the response as it was received from the connection or <code>null</code>
+   *                if the response has no content
+   */
+  synchronized void write(String key, HttpResponse response, byte[] content) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 + (content == null ? 0 : content.length));
+    try {
+      DataOutputStream output = new DataOutputStream(buffer);
+      output.writeInt(0); // length of the record, set below
+      writeString(output, key);
+      StatusLine status = response.getStatusLine();
+      output.writeByte(status.getProtocolVersion().getMajor());
+      output.writeByte(status.getProtocolVersion().getMinor());
+      output.writeShort(status.getStatusCode());
+      writeString(output, status.getReasonPhrase() == null ? "" : status.getReasonPhrase());
+
+      Header[] headers = response.getAllHeaders();
+      output.writeInt(headers.length);
+      for (Header header: headers) {
+        writeString(output, header.getName());
+        writeString(output, header.getValue());
+      }
+
+      output.writeInt(content == null ? -1 : content.length);
+      if (content != null)
+        output.write(content);
+
+      ByteBuffer record = ByteBuffer.wrap(buffer.toByteArray());
+      record.putInt(0, record.remaining() - 4);
+      writeFully(record, position);
+    } catch (IOException e) {
+      throw new AssertionError("Failed to write exchange store " + path, e);
+    }
+
+    position += buffer.size();
+  }
+
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  /**
+   * Closes the file.
+   */
+  synchronized void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // nothing to do
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer, long position) throws IOException {
+    if (position + buffer.remaining() > Integer.MAX_VALUE)
+      throw new AssertionError("Exchange store " + path + " can't be larger than 2 GB");
+
+    while (buffer.hasRemaining())
+      position += channel.write(buffer, position);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Request entity which streams the region of the file with the known length. The file is read with the positional
+ * reads, so the entity is repeatable and the position of the channel isn't changed.
+ * @author BrokenEvent
+ */
+class FileChannelEntity extends AbstractHttpEntity {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long start;
+  private final long length;
+
+  /**
+   * Initializes the entity for the whole file. The file is opened every time the content is written.
+   * @param path path of the file
+   * @param length length of the file
+   */
+  FileChannelEntity(Path path, long length) {
+    this.path = path;
+    this.channel = null;
+    this.start = 0;
+    this.length = length;
+  }
+
+  /**
+   * Initializes the entity for the region of the open channel. The channel isn't closed by the entity.
+   * @param channel channel of the file
+   * @param start position of the region
+   * @param length length of the region
+   */
+  FileChannelEntity(FileChannel channel, long start, long length) {
+    this.path = null;
+    this.channel = channel;
+    this.start = start;
+    this.length = length;
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return length;
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    return new RegionStream(channel != null ? channel : FileChannel.open(path, StandardOpenOption.READ));
+  }
+
+  @Override
+  public void writeTo(OutputStream stream) throws IOException {
+    FileChannel source = channel != null ? channel : FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(BUFFER_SIZE, Math.max(1, length)));
+      long position = start;
+      long end = start + length;
+      while (position < end) {
+        buffer.clear();
+        buffer.limit((int)Math.min(buffer.capacity(), end - position));
+        int read = source.read(buffer, position);
+        if (read == -1)
+          throw new IOException("File is truncated at " + position + " bytes, expected " + end);
+        stream.write(buffer.array(), 0, read);
+        position += read;
+      }
+      stream.flush();
+    } finally {
+      if (channel == null)
+        source.close();
+    }
+  }
+
+  private class RegionStream extends InputStream {
+    private final FileChannel source;
+    private long position = start;
+
+    RegionStream(FileChannel source) {
+      this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] value = new byte[1];
+      return read(value, 0, 1) == -1 ? -1 : value[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+      if (count == 0)
+        return 0;
+      long remaining = start + length - position;
+      if (remaining <= 0)
+        return -1;
+
+      int read = source.read(ByteBuffer.wrap(buffer, offset, (int)Math.min(count, remaining)), position);
+      if (read > 0)
+        position += read;
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (channel == null)
+        source.close();
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Deterministic pseudo-random content of the given length. The content is generated on the fly, so the content
+ * of any size takes no memory and needs no fixture files. The same length and seed always give the same bytes,
+ * so the content received by the server can be checked with {@link #digest(String)}.
+ * <pre>
+ *   GeneratedContent content = new GeneratedContent(4L * 1024 * 1024 * 1024, 1);
+ *   TestPostRequest request = new TestPostRequest("/upload");
+ *   request.setContent(content);
+ * </pre>
+ * @author BrokenEvent
+ */
+public class GeneratedContent {
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final long length;
+  private final long seed;
+
+  /**
+   * Initializes the content.
+   * @param length length of the content in bytes
+   * @param seed seed of the generator
+   */
+  public GeneratedContent(long length, long seed) {
+    if (length < 0)
+      throw new IllegalArgumentException("Length can't be negative: " + length);
+    this.length = length;
+    this.seed = seed;
+  }
+
+  /**
+   * Gets the length of the content.
+   * @return length in bytes
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Gets the seed of the generator.
+   * @return seed of the generator
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Opens the stream of the content from the beginning.
+   * @return stream of the content
+   */
+  public InputStream openStream() {
+    return new GeneratedStream();
+  }
+
+  /**
+   * Writes the whole content to the stream.
+   * @param stream stream to write to
+   * @throws IOException if the stream fails
+   */
+  public void writeTo(OutputStream stream) throws IOException {
+    byte[] chunk = new byte[(int)Math.min(CHUNK_SIZE, length)];
+    for (long position = 0; position < length; ) {
+      int count = (int)Math.min(chunk.length, length - position);
+      fill(position, chunk, 0, count);
+      stream.write(chunk, 0, count);
+      position += count;
+    }
+  }
+
+  /**
+   * Calculates the digest of the content.
+   * @param algorithm name of the digest algorithm, see {@link ContentDigest}
+   * @return hex digest of the content
+   */
+  public String digest(String algorithm) {
+    ContentDigest digest = new ContentDigest(algorithm);
+    byte[] chunk = new byte[(int)Math.min(CHUNK_SIZE, length)];
+    for (long position = 0; position < length; ) {
+      int count = (int)Math.min(chunk.length, length - position);
+      fill(position, chunk, 0, count);
+      digest.update(chunk, 0, count);
+      position += count;
+    }
+    return digest.toHex();
+  }
+
+  /**
+   * Fills the buffer with the content starting from the given position. Every 8 bytes of the content are
+   * the SplitMix64 value of their index, so any part of the content is generated independently.
+   */
+  private void fill(long position, byte[] buffer, int offset, int count) {
+    long word = position >>> 3;
+    int shift = (int)(position & 7) * 8;
+    long value = mix(word);
+    for (int i = 0; i < count; i++) {
+      buffer[offset + i] = (byte)(value >>> shift);
+      shift += 8;
+      if (shift == 64) {
+        shift = 0;
+        value = mix(++word);
+      }
+    }
+  }
+
+  private long mix(long index) {
+    long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override
+  public String toString() {
+    return length + " bytes of generated content, seed " + seed;
+  }
+
+  private class GeneratedStream extends InputStream {
+    private long position;
+
+    @Override
+    public int read() {
+      if (position >= length)
+        return -1;
+
+      byte[] value = new byte[1];
+      fill(position++, value, 0, 1);
+      return value[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) {
+      if (count == 0)
+        return 0;
+      if (position >= length)
+        return -1;
+
+      count = (int)Math.min(count, length - position);
+      fill(position, buffer, offset, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public long skip(long count) {
+      long skipped = Math.max(0, Math.min(count, length - position));
+      position += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return (int)Math.min(Integer.MAX_VALUE, length - position);
+    }
+  }
+}
@@ -0,0 +1,496 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide pool of keep-alive http connections shared by all the {@link TestRequest} implementations.
+ * The pooled client is created on first usage, so the settings should be changed before the first request
+ * is executed or after {@link #shutdown()}.
+ * <pre>
+ *   HttpClientPool.getDefault().setMaxConnectionsPerRoute(100);
+ * </pre>
+ * The default pool is shut down by the JVM shutdown hook, but it can be closed explicitly from
+ * {@link org.junit.AfterClass} method of the testcase.
+ * @author BrokenEvent
+ */
+public final class HttpClientPool {
+  private static final HttpClientPool defaultPool = new HttpClientPool();
+  private static boolean hookRegistered;
+
+  /**
+   * Name of the connection attribute with the state of the statistics.
+   */
+  private static final String CONNECTION_ATTRIBUTE = "nanotests.connection";
+
+  private final Object lock = new Object();
+  private final Map<String, ConnectionStats> connectionStats = new ConcurrentHashMap<String, ConnectionStats>();
+
+  private int maxConnectionsPerRoute = 50;
+  private int maxConnectionsTotal = 200;
+  private long idleTimeout = 30000;
+  private long keepAliveTimeout = 60000;
+  private int leaseTimeout = 30000;
+
+  private PoolingHttpClientConnectionManager manager;
+  private CloseableHttpClient client;
+  private ThreadPoolExecutor executor;
+
+  /**
+   * Gets the pool used by default for all the test requests.
+   * @return default connection pool
+   */
+  public static HttpClientPool getDefault() {
+    return defaultPool;
+  }
+
+  /**
+   * Gets the pooled http client. The client is created if it wasn't created before.
+   * @return shared http client
+   */
+  public CloseableHttpClient getClient() {
+    synchronized (lock){
+      if (client != null)
+        return client;
+
+      manager = new PoolingHttpClientConnectionManager(){
+        @Override
+        public void releaseConnection(HttpClientConnection connection, Object state, long keepAlive, TimeUnit unit) {
+          countBytes(connection);
+          super.releaseConnection(connection, state, keepAlive, unit);
+        }
+
+        @Override
+        public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+          // the new connection is leased, the reused ones are marked when the request is sent
+          RequestTimings timings = RequestTimings.from(context);
+          if (timings != null)
+            timings.leased();
+          super.connect(connection, route, connectTimeout, context);
+        }
+      };
+      manager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+      manager.setMaxTotal(maxConnectionsTotal);
+      manager.setValidateAfterInactivity(2000);
+
+      client = HttpClients.custom()
+          .setConnectionManager(manager)
+          .setKeepAliveStrategy(new KeepAliveStrategy(keepAliveTimeout))
+          .setRequestExecutor(new TimingRequestExecutor(this))
+          .evictExpiredConnections()
+          .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+          // each request used its own client before, so no cookies should leak between the requests
+          .disableCookieManagement()
+          // compression is negotiated by the requests, so the wire size of the content can be measured
+          .disableContentCompression()
+          .setDefaultRequestConfig(RequestConfig.custom().setConnectionRequestTimeout(leaseTimeout).build())
+          .build();
+
+      if (this == defaultPool && !hookRegistered){
+        Runtime.getRuntime().addShutdownHook(new Thread("nanotests-pool-shutdown"){
+          @Override
+          public void run() {
+            defaultPool.shutdown();
+          }
+        });
+        hookRegistered = true;
+      }
+
+      return client;
+    }
+  }
+
+  /**
+   * Gets the executor used to run the asynchronous requests. The executor has up to
+   * {@link #getMaxConnectionsTotal()} daemon threads, so every pooled connection can be in use at once.
+   * Requests above that limit are queued.
+   * @return executor for the asynchronous requests
+   */
+  public ExecutorService getExecutor() {
+    synchronized (lock){
+      if (executor != null)
+        return executor;
+
+      executor = new ThreadPoolExecutor(maxConnectionsTotal, maxConnectionsTotal, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("nanotests-async-"));
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
+  /**
+   * Runs the task by the executor of the pool. If the pool is shut down before the task is started, the future is
+   * completed exceptionally with {@link CancellationException}, so the callers waiting for it are not blocked forever.
+   * @param task task to run
+   * @param <T> type of the task result
+   * @return future completed with the result of the task
+   */
+  public <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+    PoolTask<T> poolTask = new PoolTask<T>(task);
+    try {
+      getExecutor().execute(poolTask);
+    } catch (RejectedExecutionException e) {
+      poolTask.cancel();
+    }
+    return poolTask.future;
+  }
+
+  /**
+   * Closes the pooled client and all its connections. The next request will create the new client
+   * with the current settings. The asynchronous requests which are not started yet are cancelled.
+   */
+  public void shutdown() {
+    synchronized (lock){
+      if (executor != null){
+        for (Runnable dropped: executor.shutdownNow())
+          if (dropped instanceof PoolTask)
+            ((PoolTask<?>)dropped).cancel();
+        executor = null;
+      }
+
+      if (client == null)
+        return;
+
+      try {
+        client.close();
+      } catch (IOException e) {
+        // the connections are dropped anyway
+      } finally {
+        client = null;
+        manager = null;
+      }
+    }
+  }
+
+  /**
+   * Gets the count of the connections which are leased from the pool now.
+   * @return count of the leased connections or 0 if the pool isn't started
+   */
+  public int getLeasedConnections() {
+    synchronized (lock){
+      return manager == null ? 0 : manager.getTotalStats().getLeased();
+    }
+  }
+
+  /**
+   * Gets the count of the idle keep-alive connections available for reuse.
+   * @return count of the idle connections or 0 if the pool isn't started
+   */
+  public int getAvailableConnections() {
+    synchronized (lock){
+      return manager == null ? 0 : manager.getTotalStats().getAvailable();
+    }
+  }
+
+  /**
+   * Counts the request sent over the connection to the host.
+   * @param connection connection of the request
+   * @param host target host of the request
+   * @return true if the connection is reused
+   */
+  boolean countRequest(HttpClientConnection connection, HttpHost host){
+    boolean reused = connection.getMetrics().getRequestCount() > 0;
+    countBytes(connection);
+
+    String key = ConnectionStats.key(host);
+    getStats(key).connection(reused);
+    if (connection instanceof HttpContext){
+      HttpContext context = (HttpContext)connection;
+      ConnectionState state = (ConnectionState)context.getAttribute(CONNECTION_ATTRIBUTE);
+      if (state == null)
+        context.setAttribute(CONNECTION_ATTRIBUTE, state = new ConnectionState());
+      state.host = key;
+    }
+    return reused;
+  }
+
+  /**
+   * Counts the bytes transferred over the connection since the last count.
+   * @param connection connection to count
+   */
+  private void countBytes(HttpClientConnection connection){
+    if (!(connection instanceof HttpContext))
+      return;
+
+    ConnectionState state = (ConnectionState)((HttpContext)connection).getAttribute(CONNECTION_ATTRIBUTE);
+    if (state == null)
+      return;
+
+    HttpConnectionMetrics metrics = connection.getMetrics();
+    long sent = metrics.getSentBytesCount();
+    long received = metrics.getReceivedBytesCount();
+    getStats(state.host).bytes(sent - state.sent, received - state.received);
+    state.sent = sent;
+    state.received = received;
+  }
+
+  private ConnectionStats getStats(String key){
+    ConnectionStats stats = connectionStats.get(key);
+    if (stats == null){
+      ConnectionStats created = new ConnectionStats(key);
+      stats = connectionStats.putIfAbsent(key, created);
+      if (stats == null)
+        stats = created;
+    }
+    return stats;
+  }
+
+  /**
+   * Gets the connection statistics of the host since the pool is created or the statistics are reset.
+   * @param hostUrl URL of the host, like <code>http://localhost:8080</code>
+   * @return statistics of the host
+   */
+  public ConnectionStats getConnectionStats(String hostUrl) {
+    String key = ConnectionStats.key(HttpHost.create(hostUrl));
+    ConnectionStats stats = connectionStats.get(key);
+    return stats != null ? stats : new ConnectionStats(key);
+  }
+
+  /**
+   * Gets the connection statistics of all the hosts since the pool is created or the statistics are reset.
+   * @return sum of the statistics of all the hosts
+   */
+  public ConnectionStats getConnectionStats() {
+    ConnectionStats total = new ConnectionStats("all hosts");
+    for (ConnectionStats stats: connectionStats.values())
+      total.add(stats);
+    return total;
+  }
+
+  /**
+   * Gets the connection statistics of every host since the pool is created or the statistics are reset.
+   * @return list of the statistics of the hosts
+   */
+  public List<ConnectionStats> getConnectionStatsByHost() {
+    return Collections.unmodifiableList(new ArrayList<ConnectionStats>(connectionStats.values()));
+  }
+
+  /**
+   * Resets the connection statistics of all the hosts. The keep-alive connections stay in the pool,
+   * so the requests after the reset can reuse them.
+   */
+  public void resetConnectionStats() {
+    connectionStats.clear();
+  }
+
+  /**
+   * Gets the maximum count of the connections per single host. Default value is 50.
+   * @return maximum count of the connections per host
+   */
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  /**
+   * Sets the maximum count of the connections per single host.
+   * @param maxConnectionsPerRoute maximum count of the connections per host
+   */
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    checkNotStarted();
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  /**
+   * Gets the maximum count of the connections for all the hosts. Default value is 200.
+   * @return maximum count of the connections
+   */
+  public int getMaxConnectionsTotal() {
+    return maxConnectionsTotal;
+  }
+
+  /**
+   * Sets the maximum count of the connections for all the hosts.
+   * @param maxConnectionsTotal maximum count of the connections
+   */
+  public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+    checkNotStarted();
+    this.maxConnectionsTotal = maxConnectionsTotal;
+  }
+
+  /**
+   * Gets the time in milliseconds after which the idle connection is closed. Default value is 30 seconds.
+   * @return idle connection timeout
+   */
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Sets the time in milliseconds after which the idle connection is closed.
+   * @param idleTimeout idle connection timeout
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    checkNotStarted();
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Gets the time in milliseconds to keep the connection alive if server doesn't send the <code>Keep-Alive</code>
+   * header. Default value is 60 seconds.
+   * @return keep-alive timeout
+   */
+  public long getKeepAliveTimeout() {
+    return keepAliveTimeout;
+  }
+
+  /**
+   * Sets the time in milliseconds to keep the connection alive if server doesn't send the <code>Keep-Alive</code>
+   * header.
+   * @param keepAliveTimeout keep-alive timeout
+   */
+  public void setKeepAliveTimeout(long keepAliveTimeout) {
+    checkNotStarted();
+    this.keepAliveTimeout = keepAliveTimeout;
+  }
+
+  /**
+   * Gets the time in milliseconds to wait for the free connection from the pool. Default value is 30 seconds.
+   * @return connection lease timeout
+   */
+  public int getLeaseTimeout() {
+    return leaseTimeout;
+  }
+
+  /**
+   * Sets the time in milliseconds to wait for the free connection from the pool. The pool will be exhausted if
+   * the responses aren't read or released with {@link TestRequestImpl#release()}.
+   * @param leaseTimeout connection lease timeout
+   */
+  public void setLeaseTimeout(int leaseTimeout) {
+    checkNotStarted();
+    this.leaseTimeout = leaseTimeout;
+  }
+
+  private void checkNotStarted(){
+    synchronized (lock){
+      if (client != null)
+        throw new IllegalStateException("HttpClientPool is already started. Call shutdown() before changing settings.");
+    }
+  }
+
+  /**
+   * Statistics state of the connection: the host and the byte counts which are already counted.
+   */
+  private static class ConnectionState {
+    private String host;
+    private long sent;
+    private long received;
+  }
+
+  /**
+   * Task of the executor which completes its future exceptionally if it is dropped by {@link #shutdown()}.
+   */
+  private static class PoolTask<T> implements Runnable {
+    private final CompletableFuture<T> future = new CompletableFuture<T>();
+    private final Supplier<T> task;
+
+    PoolTask(Supplier<T> task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      if (future.isDone())
+        return;
+      try {
+        future.complete(task.get());
+      } catch (Throwable e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    void cancel() {
+      future.completeExceptionally(new CancellationException("HttpClientPool is shut down"));
+    }
+  }
+
+  /**
+   * Thread factory for the daemon threads, so the pending requests don't prevent JVM from exit.
+   */
+  static class DaemonThreadFactory implements ThreadFactory {
+    private final AtomicInteger counter = new AtomicInteger();
+    private final String prefix;
+
+    DaemonThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      // pooled threads outlive the scope of the thread which started them
+      Thread thread = new Thread(() -> {
+        TestContext.clearScope();
+        runnable.run();
+      }, prefix + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /**
+   * Keep-alive strategy which uses the server-provided timeout or the default one if server doesn't send it.
+   */
+  private static class KeepAliveStrategy extends DefaultConnectionKeepAliveStrategy {
+    private final long defaultTimeout;
+
+    KeepAliveStrategy(long defaultTimeout) {
+      this.defaultTimeout = defaultTimeout;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+      long duration = super.getKeepAliveDuration(response, context);
+      return duration > 0 ? duration : defaultTimeout;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response entity wrapper which tracks the reading of the content to complete the {@link RequestTimings}
+ * and counts the read bytes. The content stream is closed when its end is reached, so the connection is
+ * returned to the pool even if the stream is wrapped by a decoder which doesn't read the whole content.
+ * @author BrokenEvent
+ */
+class MonitoredEntity extends HttpEntityWrapper {
+  private final RequestTimings timings;
+  private long length;
+
+  MonitoredEntity(HttpEntity entity, RequestTimings timings) {
+    super(entity);
+    this.timings = timings;
+  }
+
+  /**
+   * Gets the count of the content bytes read from the wrapped entity.
+   * @return count of the read bytes
+   */
+  long getReadLength() {
+    return length;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    InputStream stream = super.getContent();
+    return stream == null ? null : new MonitoredStream(stream);
+  }
+
+  private class MonitoredStream extends FilterInputStream {
+    private boolean ended;
+
+    MonitoredStream(InputStream stream) {
+      super(stream);
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (ended)
+        return -1;
+
+      int value = super.read();
+      if (value == -1)
+        completed();
+      else
+        length++;
+      return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+      if (ended)
+        return -1;
+
+      int read = super.read(buffer, offset, count);
+      if (read == -1)
+        completed();
+      else
+        length += read;
+      return read;
+    }
+
+    private void completed() throws IOException {
+      ended = true;
+      timings.completed();
+      close();
+    }
+  }
+}
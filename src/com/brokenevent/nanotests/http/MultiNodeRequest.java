@@ -0,0 +1,181 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Request which is executed against several servers in parallel, like the nodes of the cluster behind
+ * the load balancer. A separate {@link TestRequest} is made for every node by the factory and sent
+ * with {@link TestRequest#executeAsync()}, so the content of the responses is buffered.
+ * <pre>
+ *   MultiNodeRequest request = MultiNodeRequest.get(Arrays.asList("http://node1:8080", "http://node2:8080"), "/status");
+ *   request.execute();
+ *   assertNodesAgree(request);
+ * </pre>
+ * @author BrokenEvent
+ */
+public class MultiNodeRequest {
+  /**
+   * Digest algorithm used to compare the content of the responses.
+   */
+  public static final String DIGEST_ALGORITHM = "SHA-256";
+
+  private final List<String> hostUrls;
+  private final Supplier<? extends TestRequest> factory;
+  private final Map<String, TestRequest> requests = new LinkedHashMap<String, TestRequest>();
+  private final Map<String, String> digests = new LinkedHashMap<String, String>();
+  private final Map<String, Throwable> errors = new LinkedHashMap<String, Throwable>();
+
+  /**
+   * Initializes the request to the given servers.
+   * @param hostUrls URLs of the servers
+   * @param factory factory of the requests. It should make a new request every time.
+   */
+  public MultiNodeRequest(Collection<String> hostUrls, Supplier<? extends TestRequest> factory) {
+    if (hostUrls.isEmpty())
+      throw new IllegalArgumentException("At least one server is needed");
+    this.hostUrls = new ArrayList<String>(hostUrls);
+    this.factory = factory;
+  }
+
+  /**
+   * Creates the GET request for the resource to the given servers.
+   * @param hostUrls URLs of the servers
+   * @param resource resource name
+   * @return request to the servers
+   */
+  public static MultiNodeRequest get(Collection<String> hostUrls, final String resource){
+    return new MultiNodeRequest(hostUrls, () -> new TestGetRequest(resource));
+  }
+
+  /**
+   * Executes the requests to all the servers in parallel and waits for the responses.
+   * The requests which failed to execute are available from {@link #getErrors()}.
+   */
+  public void execute(){
+    requests.clear();
+    digests.clear();
+    errors.clear();
+
+    Map<String, CompletableFuture<TestRequest>> futures = new LinkedHashMap<String, CompletableFuture<TestRequest>>();
+    for (String hostUrl: hostUrls){
+      TestRequest request = factory.get();
+      request.setHost(hostUrl);
+      requests.put(hostUrl, request);
+      futures.put(hostUrl, request.executeAsync());
+    }
+
+    for (Map.Entry<String, CompletableFuture<TestRequest>> entry: futures.entrySet()){
+      try {
+        TestRequest request = entry.getValue().get();
+        digests.put(entry.getKey(), ContentDigest.digest(request.getBytes(), DIGEST_ALGORITHM));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AssertionError("Interrupted while waiting for the response", e);
+      } catch (ExecutionException e) {
+        errors.put(entry.getKey(), e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Gets the URLs of the servers.
+   * @return URLs of the servers
+   */
+  public List<String> getHostUrls() {
+    return Collections.unmodifiableList(hostUrls);
+  }
+
+  /**
+   * Gets the requests of the last execution by the server URL.
+   * @return map of the server URL to the request
+   */
+  public Map<String, TestRequest> getRequests() {
+    return Collections.unmodifiableMap(requests);
+  }
+
+  /**
+   * Gets the request of the last execution to the given server.
+   * @param hostUrl URL of the server
+   * @return request to the server or <code>null</code> if the request isn't executed
+   */
+  public TestRequest getRequest(String hostUrl) {
+    return requests.get(hostUrl);
+  }
+
+  /**
+   * Gets the {@link #DIGEST_ALGORITHM} digests of the response content by the server URL.
+   * The servers which failed to respond are not included.
+   * @return map of the server URL to the hex digest
+   */
+  public Map<String, String> getDigests() {
+    return Collections.unmodifiableMap(digests);
+  }
+
+  /**
+   * Gets the errors of the requests which failed to execute by the server URL.
+   * @return map of the server URL to the error
+   */
+  public Map<String, Throwable> getErrors() {
+    return Collections.unmodifiableMap(errors);
+  }
+
+  /**
+   * Formats the table of the status, content length, digest and latency for every server.
+   * @return text table of the responses
+   */
+  @Override
+  public String toString() {
+    int width = 4;
+    for (String hostUrl: hostUrls)
+      width = Math.max(width, hostUrl.length());
+
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(Locale.US, "%-" + width + "s %6s %10s %-16s %12s", "node", "status", "bytes", "digest", "latency, ms"));
+    for (String hostUrl: hostUrls){
+      builder.append(String.format(Locale.US, "%n%-" + width + "s ", hostUrl));
+      Throwable error = errors.get(hostUrl);
+      TestRequest request = requests.get(hostUrl);
+      if (error != null)
+        builder.append("failed: ").append(error.getMessage());
+      else if (request == null || request.getResponse() == null)
+        builder.append("not executed");
+      else
+        builder.append(String.format(Locale.US, "%6d %10d %-16s %12.3f", request.getResponse().getStatusLine().getStatusCode(),
+            request.getBytes().length, digests.get(hostUrl).substring(0, 16), request.getTimings().getTotalTime() / 1e6));
+    }
+    return builder.toString();
+  }
+}
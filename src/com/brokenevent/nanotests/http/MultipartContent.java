@@ -0,0 +1,261 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builder of the <code>multipart/form-data</code> content for {@link TestPostRequest#setContent(MultipartContent)}.
+ * The parts are streamed from their sources when the request is executed, so the memory use doesn't depend on
+ * the size of the parts. The length of the content is calculated in advance, so the chunked encoding isn't used.
+ * <pre>
+ *   MultipartContent form = new MultipartContent()
+ *       .addField("title", "Report")
+ *       .addFile("file", "report.pdf", "application/pdf", Paths.get("report.pdf"))
+ *       .addPart("blob", "blob.bin", "application/octet-stream", new GeneratedContent(1L &lt;&lt; 30, 1));
+ *   TestPostRequest request = new TestPostRequest("/upload");
+ *   request.setContent(form);
+ * </pre>
+ * @author BrokenEvent
+ */
+public class MultipartContent {
+  private static final byte[] CRLF = {'\r', '\n'};
+  private static final char[] BOUNDARY_CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+  private final List<Part> parts = new ArrayList<Part>();
+  private String boundary;
+
+  /**
+   * Initializes the empty content with the random boundary.
+   */
+  public MultipartContent() {
+    SecureRandom random = new SecureRandom();
+    StringBuilder builder = new StringBuilder("----nanotests");
+    for (int i = 0; i < 24; i++)
+      builder.append(BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)]);
+    boundary = builder.toString();
+  }
+
+  /**
+   * Gets the boundary of the parts.
+   * @return boundary of the parts
+   */
+  public String getBoundary() {
+    return boundary;
+  }
+
+  /**
+   * Sets the boundary of the parts. The boundary must not occur in the content of the parts.
+   * @param boundary boundary of 1 to 70 characters
+   * @return this content
+   */
+  public MultipartContent setBoundary(String boundary) {
+    if (boundary.isEmpty() || boundary.length() > 70)
+      throw new IllegalArgumentException("Boundary should have 1 to 70 characters: " + boundary);
+    this.boundary = boundary;
+    return this;
+  }
+
+  /**
+   * Adds the text field encoded as UTF-8.
+   * @param name name of the field
+   * @param value value of the field
+   * @return this content
+   */
+  public MultipartContent addField(String name, String value) {
+    return addPart(name, null, null, new ByteArrayEntity(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Adds the file part with the content from the byte array.
+   * @param name name of the field
+   * @param fileName name of the file or <code>null</code> if the part isn't a file
+   * @param contentType content type of the part or <code>null</code> to omit
+   * @param data content of the part
+   * @return this content
+   */
+  public MultipartContent addPart(String name, String fileName, String contentType, byte[] data) {
+    return addPart(name, fileName, contentType, new ByteArrayEntity(data));
+  }
+
+  /**
+   * Adds the file part with the generated content.
+   * @param name name of the field
+   * @param fileName name of the file or <code>null</code> if the part isn't a file
+   * @param contentType content type of the part or <code>null</code> to omit
+   * @param content generated content of the part
+   * @return this content
+   */
+  public MultipartContent addPart(String name, String fileName, String contentType, GeneratedContent content) {
+    return addPart(name, fileName, contentType, new GeneratedEntity(content));
+  }
+
+  /**
+   * Adds the file part with the content of the file. The size of the file is taken when the part is added.
+   * @param name name of the field
+   * @param fileName name of the file as sent to the server
+   * @param contentType content type of the part or <code>null</code> to omit
+   * @param file content source file
+   * @return this content
+   */
+  public MultipartContent addFile(String name, String fileName, String contentType, Path file) {
+    try {
+      return addPart(name, fileName, contentType, new FileChannelEntity(file, Files.size(file)));
+    } catch (IOException e) {
+      throw new AssertionError("Failed to get size of " + file, e);
+    }
+  }
+
+  /**
+   * Adds the file part with the content of the file. The name of the file is sent as is.
+   * @param name name of the field
+   * @param file content source file
+   * @return this content
+   */
+  public MultipartContent addFile(String name, Path file) {
+    return addFile(name, file.getFileName().toString(), "application/octet-stream", file);
+  }
+
+  private MultipartContent addPart(String name, String fileName, String contentType, HttpEntity body) {
+    StringBuilder head = new StringBuilder();
+    head.append("Content-Disposition: form-data; name=\"").append(escape(name)).append('"');
+    if (fileName != null)
+      head.append("; filename=\"").append(escape(fileName)).append('"');
+    head.append("\r\n");
+    if (contentType != null)
+      head.append("Content-Type: ").append(contentType).append("\r\n");
+    head.append("\r\n");
+
+    parts.add(new Part(head.toString().getBytes(StandardCharsets.UTF_8), body));
+    return this;
+  }
+
+  private static String escape(String value) {
+    return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+  }
+
+  /**
+   * Gets the length of the whole content.
+   * @return length in bytes
+   */
+  public long getLength() {
+    long delimiter = boundary.length() + 4L; // "--" boundary CRLF
+    long length = delimiter + 2; // closing "--" boundary "--" CRLF
+    for (Part part: parts)
+      length += delimiter + part.head.length + part.body.getContentLength() + CRLF.length;
+    return length;
+  }
+
+  /**
+   * Makes the request entity with the content.
+   * @return request entity
+   */
+  HttpEntity toEntity() {
+    return new MultipartEntity(boundary, new ArrayList<Part>(parts), getLength());
+  }
+
+  private static class Part {
+    private final byte[] head;
+    private final HttpEntity body;
+
+    Part(byte[] head, HttpEntity body) {
+      this.head = head;
+      this.body = body;
+    }
+  }
+
+  private static class MultipartEntity extends AbstractHttpEntity {
+    private final byte[] delimiter;
+    private final byte[] closing;
+    private final List<Part> parts;
+    private final long length;
+
+    MultipartEntity(String boundary, List<Part> parts, long length) {
+      this.delimiter = ("--" + boundary + "\r\n").getBytes(StandardCharsets.US_ASCII);
+      this.closing = ("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+      this.parts = parts;
+      this.length = length;
+      setContentType("multipart/form-data; boundary=" + boundary);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      for (Part part: parts)
+        if (!part.body.isRepeatable())
+          return false;
+      return true;
+    }
+
+    @Override
+    public long getContentLength() {
+      return length;
+    }
+
+    @Override
+    public boolean isStreaming() {
+      return false;
+    }
+
+    @Override
+    public void writeTo(OutputStream stream) throws IOException {
+      for (Part part: parts) {
+        stream.write(delimiter);
+        stream.write(part.head);
+        part.body.writeTo(stream);
+        stream.write(CRLF);
+      }
+      stream.write(closing);
+      stream.flush();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      List<InputStream> streams = new ArrayList<InputStream>();
+      for (Part part: parts) {
+        streams.add(new ByteArrayInputStream(delimiter));
+        streams.add(new ByteArrayInputStream(part.head));
+        streams.add(part.body.getContent());
+        streams.add(new ByteArrayInputStream(CRLF));
+      }
+      streams.add(new ByteArrayInputStream(closing));
+      return new SequenceInputStream(Collections.enumeration(streams));
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.protocol.HttpContext;
+
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+/**
+ * Timings of the executed http request. All the values are in nanoseconds.
+ * The body transfer is measured while the content is read, so the body and total timings are complete only
+ * after the content is read by {@link TestRequest#getBytes()} or content asserts.
+ * @author BrokenEvent
+ */
+public class RequestTimings {
+  /**
+   * Name of the {@link HttpContext} attribute with the timings of the request.
+   */
+  static final String ATTRIBUTE = "nanotests.timings";
+
+  private final long started;
+  private volatile long leased;
+  private volatile long connected;
+  private volatile long sent;
+  private volatile long firstByte;
+  private volatile long completed;
+  private boolean reused;
+  private volatile Future<?> deadline;
+  private volatile String expiredPhase;
+
+  RequestTimings() {
+    started = System.nanoTime();
+  }
+
+  static RequestTimings from(HttpContext context){
+    Object timings = context.getAttribute(ATTRIBUTE);
+    return timings instanceof RequestTimings ? (RequestTimings)timings : null;
+  }
+
+  void leased(){
+    if (leased == 0)
+      leased = System.nanoTime();
+  }
+
+  void connected(boolean reused){
+    connected = System.nanoTime();
+    if (leased == 0)
+      leased = connected;
+    this.reused = reused;
+  }
+
+  void sent(){
+    sent = System.nanoTime();
+  }
+
+  void firstByte(){
+    firstByte = System.nanoTime();
+  }
+
+  void completed(){
+    if (completed == 0)
+      completed = System.nanoTime();
+    cancelDeadline();
+  }
+
+  void setDeadline(Future<?> deadline){
+    this.deadline = deadline;
+  }
+
+  void cancelDeadline(){
+    Future<?> deadline = this.deadline;
+    if (deadline != null)
+      deadline.cancel(false);
+  }
+
+  /**
+   * Marks the request as expired by the deadline.
+   * @return phase of the request when the deadline passed
+   */
+  String expired(){
+    return expiredPhase = getPhase();
+  }
+
+  /**
+   * Checks if the request is aborted because its deadline passed.
+   * @return true if the deadline passed
+   */
+  public boolean isExpired(){
+    return expiredPhase != null;
+  }
+
+  /**
+   * Gets the phase of the request when the deadline passed.
+   * @return phase of the request or <code>null</code> if the deadline didn't pass
+   */
+  public String getExpiredPhase(){
+    return expiredPhase;
+  }
+
+  /**
+   * Gets the current phase of the request, like <code>waiting for the response</code>.
+   * @return description of the phase
+   */
+  public String getPhase(){
+    if (leased == 0)
+      return "waiting for a pooled connection";
+    if (connected == 0)
+      return "connecting";
+    if (sent == 0)
+      return "sending the request";
+    if (firstByte == 0)
+      return "waiting for the response";
+    if (completed == 0)
+      return "reading the content";
+    return "completed";
+  }
+
+  /**
+   * Gets the time since the request is started.
+   * @return elapsed time
+   */
+  public long getElapsedTime(){
+    return (completed != 0 ? completed : System.nanoTime()) - started;
+  }
+
+  /**
+   * Gets the time to lease the connection from the pool, including the connection setup if it is opened.
+   * @return lease or connect time
+   */
+  public long getConnectTime(){
+    return connected == 0 ? 0 : connected - started;
+  }
+
+  /**
+   * Gets the time to wait for the connection from the pool. It grows when all the connections of the route are leased.
+   * @return lease time
+   */
+  public long getLeaseTime(){
+    return leased == 0 ? 0 : leased - started;
+  }
+
+  /**
+   * Gets the time to write the request line, headers and content.
+   * @return request write time
+   */
+  public long getRequestWriteTime(){
+    return sent == 0 ? 0 : sent - connected;
+  }
+
+  /**
+   * Gets the time from the request is sent to the response headers are received. This is the server think time
+   * including the network round-trip.
+   * @return time to first byte
+   */
+  public long getTimeToFirstByte(){
+    return firstByte == 0 ? 0 : firstByte - sent;
+  }
+
+  /**
+   * Gets the time to read the response content.
+   * @return body transfer time or 0 if the content isn't read yet
+   */
+  public long getBodyTransferTime(){
+    return completed == 0 || firstByte == 0 ? 0 : completed - firstByte;
+  }
+
+  /**
+   * Gets the full time of the request. If the content isn't read yet, the time to receive the response headers is returned.
+   * @return total time
+   */
+  public long getTotalTime(){
+    if (completed != 0)
+      return completed - started;
+    return firstByte == 0 ? 0 : firstByte - started;
+  }
+
+  /**
+   * Checks if the request is sent over the keep-alive connection from the pool.
+   * @return true if the connection is reused, false if it is opened for the request
+   */
+  public boolean isConnectionReused(){
+    return reused;
+  }
+
+  /**
+   * Checks if the response content is read completely.
+   * @return true if the content is read
+   */
+  public boolean isCompleted(){
+    return completed != 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "connect %.3f ms, write %.3f ms, first byte %.3f ms, body %.3f ms, total %.3f ms",
+        getConnectTime() / 1e6, getRequestWriteTime() / 1e6, getTimeToFirstByte() / 1e6,
+        getBodyTransferTime() / 1e6, getTotalTime() / 1e6);
+  }
+}
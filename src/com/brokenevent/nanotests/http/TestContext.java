@@ -0,0 +1,279 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.HttpHost;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable target configuration of the test requests: the server URL, the default headers, the connection pool and
+ * the timeouts. The <code>with</code> methods return the modified copy, so the context can be shared between threads.
+ * <p>
+ * The request is bound to the context when it is created. The context is taken from the current scope, which is
+ * inherited by the threads started within it, or from the default context if there is no scope:
+ * <pre>
+ *   TestContext staging = TestContext.getDefault().withHost("http://staging:8080").withHeader("X-Env", "staging");
+ *   try (TestContext.Scope scope = staging.activate()){
+ *     assertHttpOk("/status"); // request to http://staging:8080/status
+ *   }
+ * </pre>
+ * The default context is changed by {@link TestRequestImpl#setHostUrl(String)} and {@link #setDefault(TestContext)}.
+ * @author BrokenEvent
+ */
+public final class TestContext {
+  private static volatile TestContext defaultContext = new TestContext("http://localhost", null,
+      Collections.<String, String>emptyMap(), -1, -1, -1);
+  private static final InheritableThreadLocal<TestContext> scope = new InheritableThreadLocal<TestContext>();
+
+  private final String hostUrl;
+  private final HttpHost host;
+  private final HttpClientPool pool;
+  private final Map<String, String> headers;
+  private final int connectTimeout;
+  private final int socketTimeout;
+  private final long deadline;
+
+  private TestContext(String hostUrl, HttpClientPool pool, Map<String, String> headers, int connectTimeout, int socketTimeout,
+                      long deadline) {
+    this.hostUrl = hostUrl;
+    this.host = HttpHost.create(hostUrl);
+    this.pool = pool;
+    this.headers = headers;
+    this.connectTimeout = connectTimeout;
+    this.socketTimeout = socketTimeout;
+    this.deadline = deadline;
+  }
+
+  /**
+   * Gets the default context used if there is no current scope. Initially it targets <code>http://localhost</code>
+   * with the default {@link HttpClientPool}.
+   * @return default context
+   */
+  public static TestContext getDefault() {
+    return defaultContext;
+  }
+
+  /**
+   * Sets the default context used if there is no current scope.
+   * @param context new default context
+   */
+  public static synchronized void setDefault(TestContext context) {
+    if (context == null)
+      throw new IllegalArgumentException("Context can't be null");
+    defaultContext = context;
+  }
+
+  /**
+   * Replaces the host of the default context. The read and the replacement are done under the same lock
+   * as {@link #setDefault(TestContext)}, so the concurrent changes of the default context are not lost.
+   * @param hostUrl server URL
+   */
+  static synchronized void setDefaultHost(String hostUrl) {
+    defaultContext = defaultContext.withHost(hostUrl);
+  }
+
+  /**
+   * Gets the context of the current scope or the default context if there is no scope.
+   * @return current context
+   */
+  public static TestContext current() {
+    TestContext context = scope.get();
+    return context != null ? context : defaultContext;
+  }
+
+  /**
+   * Clears the scope of the current thread. Used by the pooled threads which inherit the scope of the thread
+   * they were started from.
+   */
+  static void clearScope() {
+    scope.remove();
+  }
+
+  /**
+   * Makes this context the current one until the scope is closed. The scope is inherited by the threads
+   * started within it, including the workers of the load runners.
+   * @return scope to close
+   */
+  public Scope activate() {
+    TestContext previous = scope.get();
+    scope.set(this);
+    return new Scope(previous);
+  }
+
+  /**
+   * Gets the server URL.
+   * @return server URL
+   */
+  public String getHostUrl() {
+    return hostUrl;
+  }
+
+  HttpHost getHost() {
+    return host;
+  }
+
+  /**
+   * Gets the connection pool of the requests.
+   * @return connection pool set by {@link #withPool(HttpClientPool)} or {@link HttpClientPool#getDefault()}
+   */
+  public HttpClientPool getPool() {
+    return pool != null ? pool : HttpClientPool.getDefault();
+  }
+
+  /**
+   * Gets the default headers of the requests.
+   * @return unmodifiable map of the headers
+   */
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * Gets the connect timeout.
+   * @return connect timeout in milliseconds or -1 if the client default is used
+   */
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * Gets the socket timeout, which is the maximal time of inactivity while the response is read.
+   * @return socket timeout in milliseconds or -1 if the client default is used
+   */
+  public int getSocketTimeout() {
+    return socketTimeout;
+  }
+
+  /**
+   * Gets the deadline of the requests, which is the maximal time of the whole exchange from the connection lease
+   * to the end of the content.
+   * @return deadline in milliseconds or -1 if the requests have no deadline
+   */
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Makes the copy of the context with the given server URL.
+   * @param hostUrl server URL
+   * @return modified copy of the context
+   */
+  public TestContext withHost(String hostUrl) {
+    return new TestContext(hostUrl, pool, headers, connectTimeout, socketTimeout, deadline);
+  }
+
+  /**
+   * Makes the copy of the context with the given connection pool.
+   * @param pool connection pool of the requests
+   * @return modified copy of the context
+   */
+  public TestContext withPool(HttpClientPool pool) {
+    return new TestContext(hostUrl, pool, headers, connectTimeout, socketTimeout, deadline);
+  }
+
+  /**
+   * Makes the copy of the context with the default header. The header is sent if the request doesn't set it.
+   * @param name name of the header
+   * @param value value of the header
+   * @return modified copy of the context
+   */
+  public TestContext withHeader(String name, String value) {
+    Map<String, String> copy = new LinkedHashMap<String, String>(headers);
+    copy.put(name, value);
+    return new TestContext(hostUrl, pool, Collections.unmodifiableMap(copy), connectTimeout, socketTimeout, deadline);
+  }
+
+  /**
+   * Makes the copy of the context without the default header.
+   * @param name name of the header
+   * @return modified copy of the context
+   */
+  public TestContext withoutHeader(String name) {
+    Map<String, String> copy = new LinkedHashMap<String, String>(headers);
+    copy.remove(name);
+    return new TestContext(hostUrl, pool, Collections.unmodifiableMap(copy), connectTimeout, socketTimeout, deadline);
+  }
+
+  /**
+   * Makes the copy of the context with the given connect timeout.
+   * @param timeout connect timeout or <code>null</code> to use the client default
+   * @return modified copy of the context
+   */
+  public TestContext withConnectTimeout(Duration timeout) {
+    return new TestContext(hostUrl, pool, headers, toMillis(timeout), socketTimeout, deadline);
+  }
+
+  /**
+   * Makes the copy of the context with the given socket timeout, which is the maximal time of inactivity
+   * while the response is read.
+   * @param timeout socket timeout or <code>null</code> to use the client default
+   * @return modified copy of the context
+   */
+  public TestContext withSocketTimeout(Duration timeout) {
+    return new TestContext(hostUrl, pool, headers, connectTimeout, toMillis(timeout), deadline);
+  }
+
+  /**
+   * Makes the copy of the context with the given deadline of the requests. The request is aborted when the deadline
+   * passes, and it fails with the phase it was in.
+   * @param deadline maximal time of the whole exchange or <code>null</code> for no deadline
+   * @return modified copy of the context
+   */
+  public TestContext withDeadline(Duration deadline) {
+    return new TestContext(hostUrl, pool, headers, connectTimeout, socketTimeout, deadline == null ? -1 : deadline.toMillis());
+  }
+
+  private static int toMillis(Duration timeout) {
+    return timeout == null ? -1 : (int)Math.min(Integer.MAX_VALUE, timeout.toMillis());
+  }
+
+  @Override
+  public String toString() {
+    return "TestContext{" + hostUrl + ", headers " + headers.keySet() + "}";
+  }
+
+  /**
+   * Scope of the current context. Closing the scope restores the previous context of the thread.
+   */
+  public static final class Scope implements AutoCloseable {
+    private final TestContext previous;
+
+    private Scope(TestContext previous) {
+      this.previous = previous;
+    }
+
+    @Override
+    public void close() {
+      if (previous != null)
+        scope.set(previous);
+      else
+        scope.remove();
+    }
+  }
+}
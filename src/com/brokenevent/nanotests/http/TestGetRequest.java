@@ -37,7 +37,16 @@ public class TestGetRequest extends TestRequestImpl {
    * @param resource resource name
    */
   public TestGetRequest(String resource) {
-    super(resource);
+    this(TestContext.current(), resource);
+  }
+
+  /**
+   * Initializes instance of the GET request for the given resource bound to the context.
+   * @param context context of the request
+   * @param resource resource name
+   */
+  public TestGetRequest(TestContext context, String resource) {
+    super(context, resource);
     request = new HttpGet(resource);
   }
 }
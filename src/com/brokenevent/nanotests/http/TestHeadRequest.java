@@ -37,7 +37,16 @@ public class TestHeadRequest extends TestRequestImpl {
    * @param resource resource name
    */
   public TestHeadRequest(String resource) {
-    super(resource);
+    this(TestContext.current(), resource);
+  }
+
+  /**
+   * Initializes instance of the HEAD request for the given resource bound to the context.
+   * @param context context of the request
+   * @param resource resource name
+   */
+  public TestHeadRequest(TestContext context, String resource) {
+    super(context, resource);
     request = new HttpHead(resource);
   }
 }
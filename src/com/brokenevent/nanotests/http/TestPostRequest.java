@@ -24,37 +24,59 @@
 
 package com.brokenevent.nanotests.http;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * POST request for http server tests.
  * @author BrokenEvent
  */
 public class TestPostRequest extends TestRequestImpl {
-  private BasicHttpEntity entity;
 
   /**
    * Initializes instance of the POST request for the given resource.
    * @param resource resource name
    */
   public TestPostRequest(String resource) {
-    super(resource);
+    this(TestContext.current(), resource);
+  }
+
+  /**
+   * Initializes instance of the POST request for the given resource bound to the context.
+   * @param context context of the request
+   * @param resource resource name
+   */
+  public TestPostRequest(TestContext context, String resource) {
+    super(context, resource);
     request = new HttpPost(resource);
+    ((HttpPost)request).setEntity(new BasicHttpEntity());
+  }
 
-    entity = new BasicHttpEntity();
+  /**
+   * Sets the entity of the POST request.
+   * @param entity entity with the content of the request
+   */
+  protected void setEntity(HttpEntity entity){
     ((HttpPost)request).setEntity(entity);
   }
 
   /**
-   * Set the content for the POST request from stream.
+   * Set the content for the POST request from stream. The length of the content is unknown,
+   * so the content is sent with the chunked encoding.
    * @param stream content source stream
    */
   public void setContent(InputStream stream){
+    BasicHttpEntity entity = new BasicHttpEntity();
     entity.setContent(stream);
+    setEntity(entity);
   }
 
   /**
@@ -62,6 +84,55 @@ public class TestPostRequest extends TestRequestImpl {
    * @param data content source array
    */
   public void setContent(byte[] data){
-    entity.setContent(new ByteArrayInputStream(data));
+    setEntity(new ByteArrayEntity(data));
+  }
+
+  /**
+   * Sets the content for the POST request from the file. The file is streamed when the request is executed,
+   * so the file of any size takes constant memory. The length of the content is known, so the chunked
+   * encoding isn't used.
+   * @param file content source file
+   */
+  public void setContent(Path file){
+    try {
+      setEntity(new FileChannelEntity(file, Files.size(file)));
+    } catch (IOException e) {
+      throw new AssertionError("Failed to get size of " + file, e);
+    }
+  }
+
+  /**
+   * Sets the content for the POST request from the file channel. The content is the part of the file from
+   * the current position of the channel to the end. The file is streamed when the request is executed with
+   * the positional reads, so the position of the channel isn't changed. The channel should stay open until
+   * the request is executed and isn't closed by the request.
+   * @param channel content source channel
+   */
+  public void setContent(FileChannel channel){
+    try {
+      long position = channel.position();
+      setEntity(new FileChannelEntity(channel, position, Math.max(0, channel.size() - position)));
+    } catch (IOException e) {
+      throw new AssertionError("Failed to get size of the channel", e);
+    }
+  }
+
+  /**
+   * Sets the generated content for the POST request. The content is generated while it is sent, so the content
+   * of any size takes constant memory.
+   * @param content generated content
+   */
+  public void setContent(GeneratedContent content){
+    setEntity(new GeneratedEntity(content));
+  }
+
+  /**
+   * Sets the <code>multipart/form-data</code> content for the POST request. The parts are streamed when the request
+   * is executed, so the parts of any size take constant memory. The <code>Content-Type</code> header with the boundary
+   * is set by the content.
+   * @param content multipart content
+   */
+  public void setContent(MultipartContent content){
+    setEntity(content.toEntity());
   }
 }
@@ -26,6 +26,12 @@ package com.brokenevent.nanotests.http;
 
 import org.apache.http.HttpResponse;
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Common interface for different test http requests
  * @author BrokenEvent
@@ -42,4 +48,107 @@ public interface TestRequest {
    * @return fully qualified request URL
    */
   String getRequestUrl();
+
+  /**
+   * Gets the context the request is bound to.
+   * @return context of the request
+   */
+  TestContext getContext();
+
+  /**
+   * Sets the server URL for this request only.
+   * @param hostUrl server URL or <code>null</code> to use the URL of the {@link TestContext}
+   */
+  void setHost(String hostUrl);
+
+  /**
+   * Gets the server URL for this request.
+   * @return server URL of the request
+   */
+  String getHostUrl();
+
+  /**
+   * Sets the deadline of the whole exchange for this request only.
+   * @param deadline maximal time of the exchange or <code>null</code> to use the deadline of the {@link TestContext}
+   */
+  void setDeadline(Duration deadline);
+
+  /**
+   * Executes the http request. The connection is taken from the {@link HttpClientPool} and returned back to it
+   * when the response content is cached, which happens before this method returns unless the streaming is enabled.
+   */
+  void execute();
+
+  /**
+   * Enables or disables the streaming of the large response content. By default the content is cached,
+   * so it can be read many times.
+   * @param streaming true to stream the large content
+   */
+  void setStreaming(boolean streaming);
+
+  /**
+   * Checks if the streaming of the large response content is enabled.
+   * @return true if the large content is streamed
+   */
+  boolean isStreaming();
+
+  /**
+   * Aborts the exchange and closes its connection without reading the rest of the response content.
+   */
+  void abort();
+
+  /**
+   * Executes the http request in the background using the executor of the {@link HttpClientPool}.
+   * The response content is buffered when the request completes, so the connection is returned to the pool
+   * before the future is completed. If the pool is shut down before the request is started, the future is
+   * completed exceptionally with {@link java.util.concurrent.CancellationException}.
+   * @return future which is completed with this request when the response is received
+   */
+  CompletableFuture<TestRequest> executeAsync();
+
+  /**
+   * Gets the content of the response. The content is read once and cached, so the content getters
+   * can be called many times.
+   * @return content of the response or <code>null</code> if the request isn't executed
+   */
+  byte[] getBytes();
+
+  /**
+   * Gets the text content of the response decoded with the charset from {@link #getCharset()}.
+   * @return text content of the response or <code>null</code> if the request isn't executed
+   */
+  String getStringContent();
+
+  /**
+   * Gets the reader for the content of the response decoded with the charset from {@link #getCharset()}.
+   * @return reader for the content of the response or <code>null</code> if the request isn't executed
+   */
+  Reader getReader();
+
+  /**
+   * Gets the content stream of the response. The stream reads from the content cached by {@link #getBytes()},
+   * unless the streaming of the large content is enabled by {@link #setStreaming(boolean)}. Then the stream reads
+   * directly from the connection and the content can't be read again.
+   * @return content stream of the response
+   */
+  InputStream getContent();
+
+  /**
+   * Gets the charset of the response content from the <code>Content-Type</code> header or UTF-8 if there is no charset.
+   * @return charset of the response content
+   */
+  Charset getCharset();
+
+  /**
+   * Gets the timings of the executed request.
+   * @return timings of the request or <code>null</code> if the request isn't executed
+   */
+  RequestTimings getTimings();
+
+  /**
+   * Gets the count of the content bytes received from the connection. If the content is compressed, this is
+   * the compressed size. The value is complete only after the content is read.
+   * @return count of the received content bytes
+   */
+  long getWireContentLength();
 }
@@ -24,40 +24,197 @@
 
 package com.brokenevent.nanotests.http;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.ParseException;
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Common implementation for {@link com.brokenevent.nanotests.http.TestRequest}
  * @author BrokenEvent
  */
 class TestRequestImpl implements TestRequest {
+  /**
+   * Maximal <code>Content-Length</code> of the response which is cached even if the streaming is enabled.
+   */
+  public static final long MAX_CACHED_LENGTH = 1024 * 1024;
+
   protected HttpClient client;
   protected HttpRequest request;
   protected HttpResponse response;
   private String resource;
+  private byte[] content;
+  private boolean streaming;
+  private boolean compression = true;
+  private boolean compressionHeader;
+  private final Set<String> contextHeaders = new HashSet<String>();
+  private boolean streamed;
+  private RequestTimings timings;
+  private MonitoredEntity wireEntity;
+  private String targetUrl;
+  private HttpHost target;
+  private TestContext context;
+  private int connectTimeout = -1;
+  private int socketTimeout = -1;
+  private long deadline = -1;
 
-  protected static String hostUrl = "http://localhost";
-  protected static HttpHost host = HttpHost.create(hostUrl);
+  private static volatile ExchangeWriter recorder;
+  private static volatile ExchangeReader replay;
 
   /**
-   * Sets the server URL for all the requests. Default value is <code>http://localhost</code>
+   * Sets the server URL for all the requests. Default value is <code>http://localhost</code>.
+   * This changes the default {@link TestContext} atomically, so the requests bound to other contexts are not affected.
    * @param hostUrl server URL
    */
   public static void setHostUrl(String hostUrl) {
-    TestRequestImpl.hostUrl = hostUrl;
+    TestContext.setDefaultHost(hostUrl);
+  }
+
+  /**
+   * Starts recording of the responses to the exchange store file. Every executed request is stored with its
+   * response, so the store can be used later by {@link #startReplay(Path)}. The requests are identified by the
+   * method, the URL, the <code>Accept*</code> and <code>Content-Type</code> headers and the SHA-256 digest of the
+   * request content, which is calculated while the content is sent. The multipart content should have the fixed
+   * boundary set by {@link MultipartContent#setBoundary(String)} to be replayed. The content of the
+   * response is buffered when the request is executed. The store is kept readable after each recorded request,
+   * so the responses recorded by an aborted run can be replayed too.
+   * @param path path of the store file. Existing file is overwritten.
+   */
+  public static synchronized void startRecording(Path path) {
+    stopRecording();
+    recorder = new ExchangeWriter(path);
+  }
+
+  /**
+   * Stops recording of the responses and closes the exchange store file.
+   * Does nothing if the recording isn't started.
+   */
+  public static synchronized void stopRecording() {
+    ExchangeWriter writer = recorder;
+    recorder = null;
+    if (writer != null)
+      writer.close();
+  }
+
+  /**
+   * Starts replay of the responses from the exchange store file written by {@link #startRecording(Path)}.
+   * The requests are served from the memory-mapped store without any network access. If the request isn't
+   * recorded, its execution fails. The request content is read to calculate its digest, but isn't sent.
+   * The connection timings of the replayed requests are zero.
+   * @param path path of the store file
+   */
+  public static synchronized void startReplay(Path path) {
+    replay = new ExchangeReader(path);
+  }
+
+  /**
+   * Stops replay of the responses. The requests are sent to the server again.
+   */
+  public static synchronized void stopReplay() {
+    replay = null;
   }
 
   TestRequestImpl(String resource) {
-    client = HttpClients.createDefault();
+    this(TestContext.current(), resource);
+  }
+
+  TestRequestImpl(TestContext context, String resource) {
+    this.context = context;
     this.resource = resource;
+    client = context.getPool().getClient();
+  }
+
+  /**
+   * Binds the request to the context. The request is bound to the {@link TestContext#current()} context when
+   * it is created. The headers and the timeouts of the previous context are replaced when the request is executed,
+   * the headers set by the request itself are kept.
+   * @param context context of the request
+   */
+  public void setContext(TestContext context){
+    this.context = context;
+    client = context.getPool().getClient();
+  }
+
+  /**
+   * Gets the context of the request.
+   * @return context of the request
+   */
+  public TestContext getContext(){
+    return context;
+  }
+
+  /**
+   * Sets the server URL for this request only, so the requests to different servers can be made from the same test.
+   * @param hostUrl server URL or <code>null</code> to use the URL of the {@link TestContext}
+   */
+  public void setHost(String hostUrl){
+    targetUrl = hostUrl;
+    target = hostUrl == null ? null : HttpHost.create(hostUrl);
+  }
+
+  /**
+   * Gets the server URL for this request.
+   * @return server URL set by {@link #setHost(String)} or the one of the {@link TestContext}
+   */
+  public String getHostUrl(){
+    return targetUrl != null ? targetUrl : context.getHostUrl();
+  }
+
+  /**
+   * Sets the connect timeout of this request. Overrides the timeout of the {@link TestContext}.
+   * @param timeout connect timeout or <code>null</code> to use the timeout of the context
+   */
+  public void setConnectTimeout(Duration timeout){
+    connectTimeout = timeout == null ? -1 : (int)Math.min(Integer.MAX_VALUE, timeout.toMillis());
+  }
+
+  /**
+   * Sets the socket timeout of this request, which is the maximal time of inactivity while the response is read.
+   * Overrides the timeout of the {@link TestContext}.
+   * @param timeout socket timeout or <code>null</code> to use the timeout of the context
+   */
+  public void setSocketTimeout(Duration timeout){
+    socketTimeout = timeout == null ? -1 : (int)Math.min(Integer.MAX_VALUE, timeout.toMillis());
+  }
+
+  /**
+   * Sets the deadline of this request, which is the maximal time of the whole exchange from the connection lease
+   * to the end of the content. When the deadline passes, the exchange is aborted and the request fails with the phase
+   * it was in. Overrides the deadline of the {@link TestContext}.
+   * @param deadline maximal time of the exchange or <code>null</code> to use the deadline of the context
+   */
+  public void setDeadline(Duration deadline){
+    this.deadline = deadline == null ? -1 : deadline.toMillis();
   }
 
   /**
@@ -66,6 +223,9 @@ class TestRequestImpl implements TestRequest {
    * @param value value for the header
    */
   public void setHeader(String name, String value){
+    if (name.equalsIgnoreCase("Accept-Encoding"))
+      compressionHeader = false;
+    contextHeaders.remove(name.toLowerCase(Locale.ROOT));
     request.setHeader(name, value);
   }
 
@@ -74,6 +234,9 @@ class TestRequestImpl implements TestRequest {
    * @param name name of the header to remove
    */
   public void removeHeader(String name){
+    if (name.equalsIgnoreCase("Accept-Encoding"))
+      compressionHeader = false;
+    contextHeaders.remove(name.toLowerCase(Locale.ROOT));
     request.removeHeaders(name);
   }
 
@@ -82,18 +245,252 @@ class TestRequestImpl implements TestRequest {
    * @param value User-Agent new value
    */
   public void setUserAgent(String value){
+    contextHeaders.remove("user-agent");
     request.setHeader("User-Agent", value);
   }
 
   /**
-   * Executes the http request.
+   * Enables or disables the compression of the response. If enabled, the <code>Accept-Encoding: gzip,deflate</code>
+   * header is sent unless the request has its own <code>Accept-Encoding</code> header, and the compressed content
+   * is decoded while it is read, so the content getters and asserts see the plain content. The response headers
+   * are left as is. Other encodings are not decoded. The compression is enabled by default. Disabling it removes
+   * only the header added by the request itself.
+   * @param enabled true to request the compressed response
+   */
+  public void setCompression(boolean enabled){
+    compression = enabled;
+    if (!enabled && compressionHeader){
+      request.removeHeaders("Accept-Encoding");
+      compressionHeader = false;
+    }
+  }
+
+  /**
+   * Enables or disables the streaming of the response content. By default the content is read once and cached,
+   * so all the content getters and asserts can be used many times. If the streaming is enabled,
+   * {@link #getContent()} reads directly from the connection, so the streaming asserts check the content of any
+   * size in constant memory, but the content can be read only once. The responses with the known
+   * <code>Content-Length</code> up to {@link #MAX_CACHED_LENGTH} are cached anyway. The streamed response holds its
+   * pooled connection until the content is read or the request is released or aborted.
+   * @param streaming true to stream the large content
+   */
+  public void setStreaming(boolean streaming){
+    this.streaming = streaming;
+  }
+
+  /**
+   * Checks if the streaming of the response content is enabled.
+   * @return true if the large content is streamed
+   */
+  public boolean isStreaming(){
+    return streaming;
+  }
+
+  /**
+   * Executes the http request. The connection is taken from the {@link HttpClientPool}. The response content is read
+   * and cached before this method returns, so the connection is returned back to the pool even if the content isn't
+   * used. If the streaming is enabled by {@link #setStreaming(boolean)}, the connection is returned when the content
+   * is read or {@link #release()} or {@link #abort()} is called.
    */
   public void execute(){
-    try {
-      response = client.execute(host, request);
-    } catch (IOException e) {
-      throw new AssertionError("Failed to do GET to " + hostUrl, e);
+    release();
+    content = null;
+    streamed = false;
+    timings = new RequestTimings();
+    HttpClientContext httpContext = HttpClientContext.create();
+    httpContext.setAttribute(RequestTimings.ATTRIBUTE, timings);
+    if (request instanceof HttpRequestBase && ((HttpRequestBase)request).isAborted())
+      ((HttpRequestBase)request).reset();
+    applyContext();
+    scheduleDeadline();
+
+    ExchangeReader replay = TestRequestImpl.replay;
+    if (replay != null){
+      HttpEntity entity = getRequestEntity();
+      response = replay.read(ExchangeWriter.key(request, getRequestUrl(), entity,
+          entity == null ? null : DigestingEntity.digest(entity)));
+      if (response == null)
+        throw new AssertionError("No recorded response for " + request.getRequestLine().getMethod() + " " +
+            getRequestUrl() + " with these headers and content");
+    } else {
+      ExchangeWriter recorder = TestRequestImpl.recorder;
+      HttpEntity entity = recorder == null ? null : getRequestEntity();
+      DigestingEntity digesting = entity == null ? null : new DigestingEntity(entity);
+      if (digesting != null)
+        ((HttpEntityEnclosingRequest)request).setEntity(digesting);
+
+      try {
+        response = client.execute(target != null ? target : context.getHost(), request, httpContext);
+      } catch (IOException e) {
+        throw failure("Failed to do " + request.getRequestLine().getMethod() + " to " + getHostUrl(), e);
+      } finally {
+        if (digesting != null)
+          ((HttpEntityEnclosingRequest)request).setEntity(entity);
+      }
+
+      if (recorder != null)
+        record(recorder, ExchangeWriter.key(request, getRequestUrl(), entity,
+            digesting == null ? null : digesting.toHex()));
+    }
+
+    HttpEntity entity = response.getEntity();
+    if (entity == null){
+      wireEntity = null;
+      timings.completed();
+      return;
     }
+
+    wireEntity = new MonitoredEntity(entity, timings);
+    HttpEntity decoded = decode(wireEntity);
+    response.setEntity(decoded == wireEntity ? wireEntity : new MonitoredEntity(decoded, timings));
+    if (!streaming)
+      getBytes();
+  }
+
+  private void applyContext(){
+    // the headers of the context the request was executed in before are replaced, the own headers are kept
+    for (String name: contextHeaders)
+      request.removeHeaders(name);
+    contextHeaders.clear();
+    for (Map.Entry<String, String> header: context.getHeaders().entrySet())
+      if (!request.containsHeader(header.getKey())){
+        request.setHeader(header.getKey(), header.getValue());
+        contextHeaders.add(header.getKey().toLowerCase(Locale.ROOT));
+      }
+    if (compression && !request.containsHeader("Accept-Encoding")){
+      request.setHeader("Accept-Encoding", "gzip,deflate");
+      compressionHeader = true;
+    }
+
+    HttpClientPool pool = context.getPool();
+    client = pool.getClient();
+    int connectTimeout = this.connectTimeout >= 0 ? this.connectTimeout : context.getConnectTimeout();
+    int socketTimeout = this.socketTimeout >= 0 ? this.socketTimeout : context.getSocketTimeout();
+    if (request instanceof HttpRequestBase)
+      ((HttpRequestBase)request).setConfig(connectTimeout < 0 && socketTimeout < 0 ? null : RequestConfig.custom()
+          .setConnectionRequestTimeout(pool.getLeaseTimeout())
+          .setConnectTimeout(connectTimeout)
+          .setSocketTimeout(socketTimeout)
+          .build());
+  }
+
+  private void scheduleDeadline(){
+    long deadline = getDeadline();
+    if (deadline < 0 || !(request instanceof HttpRequestBase))
+      return;
+
+    final HttpRequestBase abortable = (HttpRequestBase)request;
+    final RequestTimings timings = this.timings;
+    timings.setDeadline(DeadlineTimer.schedule(() -> {
+      timings.expired();
+      abortable.abort();
+    }, deadline));
+  }
+
+  private long getDeadline(){
+    return deadline >= 0 ? deadline : context.getDeadline();
+  }
+
+  /**
+   * Makes the error of the failed exchange. If the deadline passed, the error tells the phase of the exchange.
+   */
+  private AssertionError failure(String message, IOException e){
+    if (timings != null && timings.isExpired())
+      return new AssertionError(String.format(Locale.US, "Deadline of %d ms passed for %s while %s (%.3f ms elapsed)",
+          getDeadline(), getRequestUrl(), timings.getExpiredPhase(), timings.getElapsedTime() / 1e6), e);
+    if (timings != null)
+      return new AssertionError(message + " while " + timings.getPhase(), e);
+    return new AssertionError(message, e);
+  }
+
+  private HttpEntity getRequestEntity(){
+    return request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest)request).getEntity() : null;
+  }
+
+  private void record(ExchangeWriter recorder, String key){
+    HttpEntity entity = response.getEntity();
+    byte[] data = null;
+    if (entity != null){
+      try {
+        data = readContent(entity);
+      } catch (IOException e) {
+        throw failure("Failed to get content", e);
+      }
+
+      // the content is recorded before it is decoded, so it keeps its encoding
+      ByteArrayEntity cached = new ByteArrayEntity(data);
+      cached.setContentType(entity.getContentType());
+      cached.setContentEncoding(entity.getContentEncoding());
+      response.setEntity(cached);
+    }
+    recorder.write(key, response, data);
+  }
+
+  private static HttpEntity decode(HttpEntity entity){
+    Header encoding = entity.getContentEncoding();
+    if (encoding == null)
+      return entity;
+
+    String value = encoding.getValue().trim().toLowerCase(Locale.ROOT);
+    if (value.equals("gzip") || value.equals("x-gzip"))
+      return new GzipDecompressingEntity(entity);
+    if (value.equals("deflate"))
+      return new DeflateDecompressingEntity(entity);
+    return entity;
+  }
+
+  /**
+   * Gets the count of the content bytes received from the connection. If the content is compressed, this is
+   * the compressed size. The value is complete only after the content is read.
+   * @return count of the received content bytes
+   */
+  public long getWireContentLength(){
+    return wireEntity == null ? 0 : wireEntity.getReadLength();
+  }
+
+  /**
+   * Gets the timings of the executed request.
+   * @return timings of the request or <code>null</code> if the request isn't executed
+   */
+  public RequestTimings getTimings(){
+    return timings;
+  }
+
+  /**
+   * Executes the http request in the background using the executor of the {@link HttpClientPool}.
+   * The response content is buffered when the request completes, so the connection is returned to the pool
+   * before the future is completed. If the pool is shut down before the request is started, the future is
+   * completed exceptionally with {@link java.util.concurrent.CancellationException}.
+   * @return future which is completed with this request when the response is received
+   */
+  public CompletableFuture<TestRequest> executeAsync(){
+    return context.getPool().supplyAsync(() -> {
+      execute();
+      getBytes();
+      return this;
+    });
+  }
+
+  /**
+   * Aborts the exchange and closes its connection without reading the rest of the response content. This is cheaper
+   * than {@link #release()} when the asserts need only the beginning of a large content.
+   */
+  public void abort(){
+    if (request instanceof HttpRequestBase)
+      ((HttpRequestBase)request).abort();
+    if (timings != null)
+      timings.cancelDeadline();
+  }
+
+  /**
+   * Releases the connection used by the response back to the {@link HttpClientPool}.
+   * Unread content of the response is discarded.
+   */
+  public void release(){
+    if (response != null)
+      EntityUtils.consumeQuietly(response.getEntity());
+    if (timings != null)
+      timings.cancelDeadline();
   }
 
   /**
@@ -101,7 +498,7 @@ class TestRequestImpl implements TestRequest {
    * @return fully qualified request URL
    */
   public String getRequestUrl() {
-    return hostUrl + resource;
+    return getHostUrl() + resource;
   }
 
   /**
@@ -113,26 +510,137 @@ class TestRequestImpl implements TestRequest {
   }
 
   /**
-   * Helper method to get content of the response for the http request.
-   * @return text content of the response
+   * Gets the content of the response. The content is read once and cached, so this method and other content
+   * getters can be called many times. The response entity is replaced with the cached one.
+   * @return content of the response or <code>null</code> if the request isn't executed
    */
-  public String getStringContent(){
+  public byte[] getBytes(){
     if (response == null)
       return null;
+    if (content != null)
+      return content;
+    if (streamed)
+      throw new AssertionError("Content of " + getRequestUrl() + " is already read by the streaming assert");
+
+    HttpEntity entity = response.getEntity();
+    if (entity == null)
+      return content = new byte[0];
 
     try {
-      InputStream stream = response.getEntity().getContent();
+      content = readContent(entity);
+      timings.completed();
+    } catch (IOException e) {
+      throw failure("Failed to get content", e);
+    }
+
+    ByteArrayEntity cached = new ByteArrayEntity(content);
+    cached.setContentType(entity.getContentType());
+    // the decoded content is plain, so only the content read from the wire as is keeps its encoding
+    if (entity == wireEntity)
+      cached.setContentEncoding(entity.getContentEncoding());
+    response.setEntity(cached);
+
+    return content;
+  }
+
+  private static byte[] readContent(HttpEntity entity) throws IOException {
+    InputStream stream = entity.getContent();
+    if (stream == null)
+      return new byte[0];
+
+    try {
+      long length = entity.getContentLength();
+      if (length >= 0 && length < Integer.MAX_VALUE){
+        byte[] data = new byte[(int)length];
+        int offset = 0;
+        int read;
+        while (offset < data.length && (read = stream.read(data, offset, data.length - offset)) != -1)
+          offset += read;
+        return offset == data.length ? data : Arrays.copyOf(data, offset);
+      }
 
       ByteArrayOutputStream cache = new ByteArrayOutputStream();
-      byte[] buffer = new byte[1024];
+      byte[] buffer = new byte[8192];
       int read;
       while ((read = stream.read(buffer)) != -1)
         cache.write(buffer, 0, read);
+      return cache.toByteArray();
+    } finally {
+      stream.close();
+    }
+  }
 
-      return new String(cache.toByteArray());
+  /**
+   * Gets the content stream of the response. The content is cached by {@link #getBytes()} and the stream reads
+   * from the cache, unless the streaming is enabled by {@link #setStreaming(boolean)} and the content is larger
+   * than {@link #MAX_CACHED_LENGTH} or its length is unknown. Then the stream reads directly from the connection
+   * and the content can't be read again.
+   * @return content stream of the response
+   */
+  public InputStream getContent(){
+    if (content != null || response == null)
+      return new ByteArrayInputStream(content != null ? content : new byte[0]);
+    if (streamed)
+      throw new AssertionError("Content of " + getRequestUrl() + " is already read by the streaming assert");
+
+    HttpEntity entity = response.getEntity();
+    if (entity == null)
+      return new ByteArrayInputStream(new byte[0]);
+
+    long length = entity.getContentLength();
+    if (!streaming || entity.isRepeatable() || (length >= 0 && length <= MAX_CACHED_LENGTH))
+      return new ByteArrayInputStream(getBytes());
 
+    try {
+      streamed = true;
+      InputStream stream = entity.getContent();
+      return stream != null ? stream : new ByteArrayInputStream(new byte[0]);
     } catch (IOException e) {
       throw new AssertionError("Failed to get content", e);
     }
   }
+
+  /**
+   * Gets the charset of the response content from the <code>Content-Type</code> header.
+   * If the header has no charset, UTF-8 is used.
+   * @return charset of the response content
+   */
+  public Charset getCharset(){
+    if (response == null || response.getEntity() == null)
+      return StandardCharsets.UTF_8;
+
+    try {
+      ContentType type = ContentType.get(response.getEntity());
+      if (type != null && type.getCharset() != null)
+        return type.getCharset();
+    } catch (ParseException e) {
+      // use default
+    } catch (UnsupportedCharsetException e) {
+      // use default
+    }
+    return StandardCharsets.UTF_8;
+  }
+
+  /**
+   * Helper method to get content of the response for the http request.
+   * The content is decoded with the charset from {@link #getCharset()}.
+   * @return text content of the response
+   */
+  public String getStringContent(){
+    if (response == null)
+      return null;
+
+    return new String(getBytes(), getCharset());
+  }
+
+  /**
+   * Gets the reader for the content of the response decoded with the charset from {@link #getCharset()}.
+   * @return reader for the content of the response
+   */
+  public Reader getReader(){
+    if (response == null)
+      return null;
+
+    return new InputStreamReader(new ByteArrayInputStream(getBytes()), getCharset());
+  }
 }
@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.http;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+
+/**
+ * Request executor which fills the {@link RequestTimings} of the request from the http context
+ * and counts the connections in the {@link ConnectionStats} of the pool.
+ * @author BrokenEvent
+ */
+class TimingRequestExecutor extends HttpRequestExecutor {
+  private final HttpClientPool pool;
+
+  TimingRequestExecutor(HttpClientPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context)
+      throws IOException, HttpException {
+    HttpHost target = (HttpHost)context.getAttribute(HttpCoreContext.HTTP_TARGET_HOST);
+    boolean reused = target != null && pool.countRequest(conn, target);
+
+    RequestTimings timings = RequestTimings.from(context);
+    if (timings != null)
+      timings.connected(reused);
+
+    HttpResponse response = super.doSendRequest(request, conn, context);
+
+    if (timings != null)
+      timings.sent();
+    return response;
+  }
+
+  @Override
+  protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context)
+      throws HttpException, IOException {
+    HttpResponse response = super.doReceiveResponse(request, conn, context);
+
+    RequestTimings timings = RequestTimings.from(context);
+    if (timings != null)
+      timings.firstByte();
+    return response;
+  }
+}
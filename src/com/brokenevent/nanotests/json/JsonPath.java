@@ -0,0 +1,439 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled JSONPath expression which is evaluated over the {@link JsonReader} while the document is read.
+ * The supported subset is:
+ * <ul>
+ *   <li><code>$</code> - root of the document</li>
+ *   <li><code>.name</code> or <code>['name']</code> - member of the object</li>
+ *   <li><code>[2]</code> - element of the array</li>
+ *   <li><code>[1:3]</code>, <code>[:3]</code>, <code>[1:]</code> - slice of the array</li>
+ *   <li><code>.*</code> or <code>[*]</code> - all the members or elements</li>
+ *   <li><code>..name</code>, <code>..[2]</code>, <code>..*</code> - recursive descent</li>
+ * </ul>
+ * The evaluation reads the document only while the path can still match. Once the named member or the last
+ * element of the index or slice is passed, the rest of its container isn't read, and the values outside the
+ * path are skipped without decoding. The matches nested in the other matches, like <code>$..a</code> in
+ * <code>{"a":{"a":1}}</code>, are reported after the enclosing match.
+ * @author BrokenEvent
+ */
+public final class JsonPath {
+  private static final int ANY = 0;
+  private static final int NAME = 1;
+  private static final int INDEX = 2;
+
+  private final String path;
+  private final Step[] steps;
+
+  private JsonPath(String path, Step[] steps) {
+    this.path = path;
+    this.steps = steps;
+  }
+
+  /**
+   * Compiles the path expression.
+   * @param path JSONPath expression, like <code>$.items[0].id</code>
+   * @return compiled path
+   * @throws IllegalArgumentException when the expression is malformed or not supported
+   */
+  public static JsonPath compile(String path){
+    if (path == null || !path.startsWith("$"))
+      throw new IllegalArgumentException("JSONPath should start with '$': " + path);
+
+    List<Step> steps = new ArrayList<Step>();
+    int i = 1;
+    while (i < path.length()){
+      boolean descendant = false;
+      char c = path.charAt(i);
+      if (c == '.'){
+        i++;
+        if (i < path.length() && path.charAt(i) == '.'){
+          descendant = true;
+          i++;
+        }
+        if (i == path.length())
+          throw new IllegalArgumentException("JSONPath ends with '.': " + path);
+        c = path.charAt(i);
+        if (c == '['){
+          if (!descendant)
+            throw new IllegalArgumentException("Unexpected '.[' at " + i + ": " + path);
+        }
+        else if (c == '*'){
+          steps.add(new Step(descendant, ANY, null, 0, 0));
+          i++;
+          continue;
+        }
+        else {
+          int start = i;
+          while (i < path.length() && path.charAt(i) != '.' && path.charAt(i) != '[')
+            i++;
+          steps.add(new Step(descendant, NAME, path.substring(start, i), 0, 0));
+          continue;
+        }
+      }
+      if (c != '[')
+        throw new IllegalArgumentException("Unexpected '" + c + "' at " + i + ": " + path);
+
+      int end = path.indexOf(']', i);
+      if (end == -1)
+        throw new IllegalArgumentException("Unclosed '[' at " + i + ": " + path);
+      String selector = path.substring(i + 1, end).trim();
+      if (selector.length() >= 2 && (selector.charAt(0) == '\'' || selector.charAt(0) == '"') &&
+          selector.charAt(selector.length() - 1) == selector.charAt(0)){
+        steps.add(new Step(descendant, NAME, selector.substring(1, selector.length() - 1), 0, 0));
+      }
+      else if (selector.equals("*"))
+        steps.add(new Step(descendant, ANY, null, 0, 0));
+      else {
+        int colon = selector.indexOf(':');
+        try {
+          if (colon == -1){
+            int index = Integer.parseInt(selector);
+            steps.add(new Step(descendant, INDEX, null, index, index + 1));
+          }
+          else {
+            String from = selector.substring(0, colon).trim();
+            String to = selector.substring(colon + 1).trim();
+            steps.add(new Step(descendant, INDEX, null, from.isEmpty() ? 0 : Integer.parseInt(from),
+                to.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(to)));
+          }
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Unsupported selector '[" + selector + "]': " + path, e);
+        }
+        Step step = steps.get(steps.size() - 1);
+        if (step.from < 0 || step.to < step.from)
+          throw new IllegalArgumentException("Negative indexes are not supported '[" + selector + "]': " + path);
+      }
+      i = end + 1;
+    }
+
+    if (steps.size() >= Long.SIZE - 1)
+      throw new IllegalArgumentException("JSONPath has too many steps: " + path);
+    return new JsonPath(path, steps.toArray(new Step[steps.size()]));
+  }
+
+  /**
+   * Reads the values matched by the path. The strings are unescaped, the numbers and booleans are returned
+   * as they are written, the <code>null</code> values are returned as <code>null</code>, and the objects and arrays
+   * are returned as the compact JSON text. The reader is left at the token after the last read value.
+   * @param reader reader positioned at the beginning of the document
+   * @param limit maximal count of the values to read, the reading stops when it is reached
+   * @return list of the matched values
+   * @throws IOException when the reading is failed or the document is malformed
+   */
+  public List<String> select(JsonReader reader, int limit) throws IOException {
+    List<String> values = new ArrayList<String>();
+    evaluate(reader, limit, values);
+    return values;
+  }
+
+  /**
+   * Counts the values matched by the path. The matched values are skipped without decoding, unless other
+   * matches may be nested in them.
+   * The reader is left at the token after the last read value.
+   * @param reader reader positioned at the beginning of the document
+   * @param limit maximal count of the values to find, the reading stops when it is reached
+   * @return count of the matched values
+   * @throws IOException when the reading is failed or the document is malformed
+   */
+  public int count(JsonReader reader, int limit) throws IOException {
+    return evaluate(reader, limit, null);
+  }
+
+  private int evaluate(JsonReader reader, int limit, List<String> values) throws IOException {
+    if (limit <= 0)
+      return 0;
+
+    JsonToken token = reader.next();
+    if (steps.length == 0){
+      if (values == null)
+        reader.skipChildren();
+      else
+        values.add(readValue(reader, token));
+      return 1;
+    }
+    if (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY)
+      return 0;
+
+    long accept = 1L << steps.length;
+    long[] live = new long[16];
+    int[] indexes = new int[16];
+    int depth = 0;
+    live[0] = 1;
+    indexes[0] = token == JsonToken.BEGIN_ARRAY ? 0 : -1;
+    int found = 0;
+    List<Capture> captures = new ArrayList<Capture>();
+
+    while (depth >= 0){
+      if (captures.isEmpty() && (found >= limit || isExhausted(live, depth)))
+        return found;
+
+      token = reader.next();
+      if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY){
+        for (int i = captures.size() - 1; i >= 0; i--){
+          Capture capture = captures.get(i);
+          append(capture.builder, token, null);
+          if (capture.depth == depth){
+            values.set(capture.slot, capture.builder.toString());
+            captures.remove(i);
+          }
+        }
+        depth--;
+        continue;
+      }
+
+      String name = null;
+      int index = -1;
+      if (token == JsonToken.NAME){
+        name = reader.getText();
+        for (Capture capture: captures)
+          append(capture.builder, token, name);
+        token = reader.next();
+      }
+      else
+        index = indexes[depth]++;
+
+      long states = live[depth];
+      long next = 0;
+      for (int i = 0; i < steps.length; i++){
+        if ((states & (1L << i)) == 0)
+          continue;
+        Step step = steps[i];
+        if (step.descendant)
+          next |= 1L << i;
+        if (step.matches(name, index)){
+          next |= 1L << (i + 1);
+          if (step.isPassed(name, index))
+            live[depth] &= ~(1L << i);
+        }
+      }
+
+      boolean matched = (next & accept) != 0 && found < limit;
+      long descend = next & ~accept;
+      if (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY){
+        if (matched){
+          found++;
+          if (values != null)
+            values.add(reader.getText());
+        }
+        for (Capture capture: captures)
+          append(capture.builder, token, reader.getText());
+        continue;
+      }
+
+      if (matched)
+        found++;
+      if (descend == 0){
+        // no deeper match is possible, so the value is skipped or read as a whole
+        if (values == null)
+          reader.skipChildren();
+        else if (matched || !captures.isEmpty()){
+          String value = readValue(reader, token);
+          if (matched)
+            values.add(value);
+          for (Capture capture: captures){
+            separate(capture.builder);
+            capture.builder.append(value);
+          }
+        }
+        else
+          reader.skipChildren();
+        continue;
+      }
+
+      // the matches may be nested in the value, so it is read token by token
+      depth++;
+      if (depth == live.length){
+        live = Arrays.copyOf(live, depth * 2);
+        indexes = Arrays.copyOf(indexes, depth * 2);
+      }
+      live[depth] = descend;
+      indexes[depth] = token == JsonToken.BEGIN_ARRAY ? 0 : -1;
+      if (matched && values != null){
+        captures.add(new Capture(values.size(), depth));
+        values.add(null);
+      }
+      for (Capture capture: captures)
+        append(capture.builder, token, null);
+    }
+    reader.next();
+    return found;
+  }
+
+  private static boolean isExhausted(long[] live, int depth){
+    for (int i = 0; i <= depth; i++)
+      if (live[i] != 0)
+        return false;
+    return true;
+  }
+
+  /**
+   * Reads the value started by the token as the compact JSON text, or as the plain text if it is a scalar.
+   */
+  private static String readValue(JsonReader reader, JsonToken token) throws IOException {
+    if (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY)
+      return reader.getText();
+
+    StringBuilder builder = new StringBuilder();
+    int level = 0;
+    do {
+      append(builder, token, reader.getText());
+      if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY)
+        level++;
+      else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY)
+        level--;
+      if (level > 0)
+        token = reader.next();
+    } while (level > 0);
+    return builder.toString();
+  }
+
+  private static void append(StringBuilder builder, JsonToken token, String text){
+    switch (token){
+      case BEGIN_OBJECT:
+        separate(builder);
+        builder.append('{');
+        break;
+      case BEGIN_ARRAY:
+        separate(builder);
+        builder.append('[');
+        break;
+      case END_OBJECT:
+        builder.append('}');
+        break;
+      case END_ARRAY:
+        builder.append(']');
+        break;
+      case NAME:
+        separate(builder);
+        quote(text, builder);
+        builder.append(':');
+        break;
+      case STRING:
+        separate(builder);
+        quote(text, builder);
+        break;
+      case NULL:
+        separate(builder);
+        builder.append("null");
+        break;
+      default:
+        separate(builder);
+        builder.append(text);
+        break;
+    }
+  }
+
+  private static void separate(StringBuilder builder){
+    if (builder.length() == 0)
+      return;
+    char last = builder.charAt(builder.length() - 1);
+    if (last != '{' && last != '[' && last != ':')
+      builder.append(',');
+  }
+
+  private static void quote(String value, StringBuilder builder){
+    builder.append('"');
+    for (int i = 0; i < value.length(); i++){
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\')
+        builder.append('\\').append(c);
+      else if (c < 0x20)
+        builder.append(String.format("\\u%04x", (int)c));
+      else
+        builder.append(c);
+    }
+    builder.append('"');
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+
+  /**
+   * Text of the matched object or array which is read token by token to find the matches nested in it.
+   */
+  private static final class Capture {
+    private final int slot;
+    private final int depth;
+    private final StringBuilder builder = new StringBuilder();
+
+    Capture(int slot, int depth) {
+      this.slot = slot;
+      this.depth = depth;
+    }
+  }
+
+  private static final class Step {
+    private final boolean descendant;
+    private final int type;
+    private final String name;
+    private final int from;
+    private final int to;
+
+    Step(boolean descendant, int type, String name, int from, int to) {
+      this.descendant = descendant;
+      this.type = type;
+      this.name = name;
+      this.from = from;
+      this.to = to;
+    }
+
+    boolean matches(String name, int index){
+      switch (type){
+        case NAME:
+          return name != null && name.equals(this.name);
+        case INDEX:
+          return name == null && index >= from && index < to;
+        default:
+          return true;
+      }
+    }
+
+    /**
+     * Checks if the step can't match the other values of the same container after the matched one.
+     */
+    boolean isPassed(String name, int index){
+      if (descendant)
+        return false;
+      switch (type){
+        case NAME:
+          return true;
+        case INDEX:
+          return index >= to - 1;
+        default:
+          return false;
+      }
+    }
+  }
+}
@@ -0,0 +1,385 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming pull parser of the JSON document (RFC 8259). The document is read token by token from the reader
+ * with the small buffer, so the memory doesn't depend on the document size, and the reading can be stopped
+ * at any token. The structure of the document is validated while it is read, except the values skipped
+ * by {@link #skipChildren()}, which are checked only for the balance of the brackets.
+ * <pre>
+ *   JsonReader reader = new JsonReader(new StringReader("{\"id\": 42}"));
+ *   reader.next();          // BEGIN_OBJECT
+ *   reader.next();          // NAME, getText() is "id"
+ *   reader.next();          // NUMBER, getText() is "42"
+ * </pre>
+ * @author BrokenEvent
+ */
+public class JsonReader implements Closeable {
+  private static final Pattern NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_OBJECT = 2;
+  private static final int DANGLING_NAME = 3;
+  private static final int NONEMPTY_OBJECT = 4;
+  private static final int EMPTY_ARRAY = 5;
+  private static final int NONEMPTY_ARRAY = 6;
+  private static final int CLOSED = 7;
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int pos;
+  private int limit;
+  private long offset;
+
+  private int[] stack = new int[32];
+  private int depth = 1;
+  private JsonToken token;
+  private String text;
+  private final StringBuilder builder = new StringBuilder();
+
+  /**
+   * Initializes the parser for the document.
+   * @param reader reader of the document text
+   */
+  public JsonReader(Reader reader) {
+    this.reader = reader;
+    stack[0] = EMPTY_DOCUMENT;
+  }
+
+  /**
+   * Reads the next token of the document.
+   * @return next token, {@link JsonToken#END_DOCUMENT} when the document is read completely
+   * @throws IOException when the reading is failed or the document is malformed
+   */
+  public JsonToken next() throws IOException {
+    text = null;
+    int c;
+    switch (stack[depth - 1]){
+      case EMPTY_DOCUMENT:
+        stack[depth - 1] = NONEMPTY_DOCUMENT;
+        return token = readValue(nextNonWhitespace());
+
+      case NONEMPTY_DOCUMENT:
+        if (nextNonWhitespace() != -1)
+          throw syntaxError("Unexpected data after the end of the document");
+        stack[depth - 1] = CLOSED;
+        return token = JsonToken.END_DOCUMENT;
+
+      case CLOSED:
+        return token = JsonToken.END_DOCUMENT;
+
+      case EMPTY_ARRAY:
+        stack[depth - 1] = NONEMPTY_ARRAY;
+        c = nextNonWhitespace();
+        if (c == ']'){
+          depth--;
+          return token = JsonToken.END_ARRAY;
+        }
+        return token = readValue(c);
+
+      case NONEMPTY_ARRAY:
+        c = nextNonWhitespace();
+        if (c == ']'){
+          depth--;
+          return token = JsonToken.END_ARRAY;
+        }
+        if (c != ',')
+          throw syntaxError("Expected ',' or ']'");
+        return token = readValue(nextNonWhitespace());
+
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        c = nextNonWhitespace();
+        if (c == '}'){
+          depth--;
+          return token = JsonToken.END_OBJECT;
+        }
+        if (stack[depth - 1] == NONEMPTY_OBJECT){
+          if (c != ',')
+            throw syntaxError("Expected ',' or '}'");
+          c = nextNonWhitespace();
+        }
+        if (c != '"')
+          throw syntaxError("Expected name");
+        text = readString();
+        stack[depth - 1] = DANGLING_NAME;
+        return token = JsonToken.NAME;
+
+      case DANGLING_NAME:
+        if (nextNonWhitespace() != ':')
+          throw syntaxError("Expected ':'");
+        stack[depth - 1] = NONEMPTY_OBJECT;
+        return token = readValue(nextNonWhitespace());
+
+      default:
+        throw new IllegalStateException("Unknown scope " + stack[depth - 1]);
+    }
+  }
+
+  /**
+   * Gets the last token returned by {@link #next()}.
+   * @return last token or <code>null</code> if no token is read yet
+   */
+  public JsonToken getToken() {
+    return token;
+  }
+
+  /**
+   * Gets the text of the last token. The strings and names are unescaped, the numbers and booleans are returned
+   * as they are written in the document.
+   * @return text of the token or <code>null</code> for the tokens without text
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Gets the nesting level of the current position. It is 0 for the top level of the document.
+   * @return nesting level
+   */
+  public int getDepth(){
+    return depth - 1;
+  }
+
+  /**
+   * Skips the content of the object or array started by the last token, so the next token follows its end.
+   * The skipped content isn't decoded. Does nothing if the last token doesn't start an object or array.
+   * @throws IOException when the reading is failed or the document is malformed
+   */
+  public void skipChildren() throws IOException {
+    if (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY)
+      return;
+
+    int level = 1;
+    while (level > 0){
+      int c = read();
+      switch (c){
+        case -1:
+          throw syntaxError("Unexpected end of the document");
+        case '"':
+          skipString();
+          break;
+        case '{':
+        case '[':
+          level++;
+          break;
+        case '}':
+        case ']':
+          level--;
+          break;
+        default:
+          break;
+      }
+    }
+    depth--;
+    token = stack[depth] == EMPTY_OBJECT || stack[depth] == NONEMPTY_OBJECT ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+    text = null;
+  }
+
+  /**
+   * Gets the count of the characters read from the document.
+   * @return position in the document
+   */
+  public long getOffset(){
+    return offset - limit + pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private JsonToken readValue(int c) throws IOException {
+    switch (c){
+      case '{':
+        push(EMPTY_OBJECT);
+        return JsonToken.BEGIN_OBJECT;
+      case '[':
+        push(EMPTY_ARRAY);
+        return JsonToken.BEGIN_ARRAY;
+      case '"':
+        text = readString();
+        return JsonToken.STRING;
+      case 't':
+        readLiteral("true");
+        text = "true";
+        return JsonToken.BOOLEAN;
+      case 'f':
+        readLiteral("false");
+        text = "false";
+        return JsonToken.BOOLEAN;
+      case 'n':
+        readLiteral("null");
+        return JsonToken.NULL;
+      case -1:
+        throw syntaxError("Unexpected end of the document");
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')){
+          text = readNumber(c);
+          return JsonToken.NUMBER;
+        }
+        throw syntaxError("Unexpected character '" + (char)c + "'");
+    }
+  }
+
+  private void push(int scope){
+    if (depth == stack.length)
+      stack = Arrays.copyOf(stack, depth * 2);
+    stack[depth++] = scope;
+  }
+
+  private void readLiteral(String literal) throws IOException {
+    for (int i = 1; i < literal.length(); i++)
+      if (read() != literal.charAt(i))
+        throw syntaxError("Expected '" + literal + "'");
+    checkDelimiter();
+  }
+
+  private String readNumber(int first) throws IOException {
+    builder.setLength(0);
+    builder.append((char)first);
+    while (true){
+      if (pos == limit && !fill())
+        break;
+      char c = buffer[pos];
+      if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-'){
+        builder.append(c);
+        pos++;
+      }
+      else
+        break;
+    }
+    String number = builder.toString();
+    if (!NUMBER.matcher(number).matches())
+      throw syntaxError("Malformed number '" + number + "'");
+    checkDelimiter();
+    return number;
+  }
+
+  private void checkDelimiter() throws IOException {
+    if (pos == limit && !fill())
+      return;
+    char c = buffer[pos];
+    if (c != ',' && c != '}' && c != ']' && c != ' ' && c != '\t' && c != '\r' && c != '\n')
+      throw syntaxError("Unexpected character '" + c + "'");
+  }
+
+  private String readString() throws IOException {
+    builder.setLength(0);
+    while (true){
+      int start = pos;
+      while (pos < limit){
+        char c = buffer[pos++];
+        if (c == '"'){
+          builder.append(buffer, start, pos - start - 1);
+          return builder.toString();
+        }
+        if (c == '\\'){
+          builder.append(buffer, start, pos - start - 1);
+          builder.append(readEscape());
+          start = pos;
+        }
+        else if (c < 0x20)
+          throw syntaxError("Unescaped control character in string");
+      }
+      builder.append(buffer, start, pos - start);
+      if (!fill())
+        throw syntaxError("Unterminated string");
+    }
+  }
+
+  private char readEscape() throws IOException {
+    int c = read();
+    switch (c){
+      case '"': return '"';
+      case '\\': return '\\';
+      case '/': return '/';
+      case 'b': return '\b';
+      case 'f': return '\f';
+      case 'n': return '\n';
+      case 'r': return '\r';
+      case 't': return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++){
+          int digit = Character.digit(read(), 16);
+          if (digit < 0)
+            throw syntaxError("Malformed unicode escape");
+          value = value * 16 + digit;
+        }
+        return (char)value;
+      default:
+        throw syntaxError("Malformed escape");
+    }
+  }
+
+  private void skipString() throws IOException {
+    while (true){
+      int c = read();
+      if (c == '"')
+        return;
+      if (c == '\\')
+        read();
+      else if (c == -1)
+        throw syntaxError("Unterminated string");
+    }
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    while (true){
+      int c = read();
+      if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+        return c;
+    }
+  }
+
+  private int read() throws IOException {
+    if (pos == limit && !fill())
+      return -1;
+    return buffer[pos++];
+  }
+
+  private boolean fill() throws IOException {
+    int read = reader.read(buffer, 0, buffer.length);
+    if (read <= 0)
+      return false;
+    pos = 0;
+    limit = read;
+    offset += read;
+    return true;
+  }
+
+  private IOException syntaxError(String message){
+    return new IOException(message + " at offset " + getOffset());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.util.Locale;
+
+/**
+ * Result of the single stage of the {@link ArrivalRateRunner}. The latencies are measured from the time
+ * the request was scheduled to be sent, so the delays of the load generator are included. The dropped requests
+ * have no latency, so the histogram holds only the sent ones, but {@link #getLatencyAtPercentile(double)} counts
+ * the dropped requests as slower than any sent one.
+ * @author BrokenEvent
+ */
+public class ArrivalRateResult extends LoadResult {
+  private final double targetRate;
+  private long scheduled;
+  private long dropped;
+  private long late;
+
+  ArrivalRateResult(double targetRate) {
+    this.targetRate = targetRate;
+  }
+
+  void setCounters(long scheduled, long dropped, long late){
+    this.scheduled = scheduled;
+    this.dropped = dropped;
+    this.late = late;
+  }
+
+  /**
+   * Gets the target count of the requests per second.
+   * @return target arrival rate
+   */
+  public double getTargetRate() {
+    return targetRate;
+  }
+
+  /**
+   * Gets the count of the requests scheduled to be sent.
+   * @return count of the scheduled requests
+   */
+  public long getScheduled() {
+    return scheduled;
+  }
+
+  /**
+   * Gets the count of the requests which aren't sent because the in-flight limit is reached.
+   * @return count of the dropped requests
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Gets the count of the requests which are sent later than scheduled by more than the late threshold.
+   * High value means that the load generator can't keep the rate.
+   * @return count of the late requests
+   */
+  public long getLate() {
+    return late;
+  }
+
+  /**
+   * Gets the latency at the given percentile of all the scheduled requests. The dropped requests are counted
+   * as slower than any sent one, so an overloaded stage doesn't look healthy.
+   * @param percentile percentile in range 0..100
+   * @return latency in nanoseconds or {@link Long#MAX_VALUE} if the percentile falls on the dropped requests
+   */
+  @Override
+  public long getLatencyAtPercentile(double percentile){
+    if (dropped == 0)
+      return super.getLatencyAtPercentile(percentile);
+
+    long sent = getRequests();
+    double adjusted = percentile * (sent + dropped) / sent;
+    return sent == 0 || adjusted > 100 ? Long.MAX_VALUE : super.getLatencyAtPercentile(adjusted);
+  }
+
+  @Override
+  String toPercentileTable(){
+    return super.toPercentileTable() + String.format(Locale.US, "%n%10s %12d", "dropped", dropped);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "target %.1f requests/s: %d scheduled, %d dropped, %d late%n",
+        targetRate, scheduled, dropped, late) + super.toString();
+  }
+}
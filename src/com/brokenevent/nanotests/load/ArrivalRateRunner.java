@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import com.brokenevent.nanotests.http.TestContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator: the {@link Scenario} iterations are started at the fixed arrival rate which doesn't
+ * depend on the response times, so the server queueing isn't hidden by the slow responses.
+ * <pre>
+ *   ArrivalRateRunner runner = new ArrivalRateRunner(LoadRunner.httpGet("/service/status"));
+ *   runner.addStage(100, Duration.ofSeconds(30));
+ *   runner.addStage(200, Duration.ofSeconds(30));
+ *   runner.addStage(400, Duration.ofSeconds(30));
+ *   for (ArrivalRateResult stage: runner.run())
+ *     System.out.println(stage);
+ * </pre>
+ * If the count of the running iterations reaches the in-flight limit, the next iterations are dropped and counted.
+ * @author BrokenEvent
+ */
+public class ArrivalRateRunner {
+  private static final long SPIN_THRESHOLD = 100000;
+
+  private final Scenario scenario;
+  private final List<Stage> stages = new ArrayList<Stage>();
+  private int maxInFlight;
+  private Duration lateThreshold = Duration.ofMillis(1);
+
+  /**
+   * Initializes the runner for the given scenario.
+   * @param scenario scenario of the single iteration
+   */
+  public ArrivalRateRunner(Scenario scenario) {
+    this.scenario = scenario;
+  }
+
+  /**
+   * Adds the stage with the constant arrival rate. The stages are run in order of adding.
+   * @param rps count of the iterations started per second
+   * @param duration duration of the stage
+   */
+  public void addStage(double rps, Duration duration){
+    if (rps <= 0)
+      throw new IllegalArgumentException("Rate should be positive: " + rps);
+    stages.add(new Stage(rps, duration.toNanos()));
+  }
+
+  /**
+   * Gets the maximum count of the running iterations. Default value is 0, which means
+   * {@link com.brokenevent.nanotests.http.HttpClientPool#getMaxConnectionsPerRoute()} of the pool of the current context.
+   * @return in-flight limit
+   */
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * Sets the maximum count of the running iterations.
+   * @param maxInFlight in-flight limit
+   */
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Gets the delay after which the iteration start is counted as late. Default value is 1 millisecond.
+   * @return late threshold
+   */
+  public Duration getLateThreshold() {
+    return lateThreshold;
+  }
+
+  /**
+   * Sets the delay after which the iteration start is counted as late.
+   * @param lateThreshold late threshold
+   */
+  public void setLateThreshold(Duration lateThreshold) {
+    this.lateThreshold = lateThreshold;
+  }
+
+  /**
+   * Runs the iterations at the given rate. The added stages are neither run nor changed.
+   * @param rps count of the iterations started per second
+   * @param duration duration of the test
+   * @return result of the test
+   */
+  public ArrivalRateResult run(double rps, Duration duration){
+    if (rps <= 0)
+      throw new IllegalArgumentException("Rate should be positive: " + rps);
+    return run(Collections.singletonList(new Stage(rps, duration.toNanos()))).get(0);
+  }
+
+  /**
+   * Runs all the stages one after another.
+   * @return results of the stages
+   */
+  public List<ArrivalRateResult> run(){
+    if (stages.isEmpty())
+      throw new IllegalStateException("No stages are added");
+    return run(stages);
+  }
+
+  private List<ArrivalRateResult> run(List<Stage> stages){
+    int limit = maxInFlight > 0 ? maxInFlight : TestContext.current().getPool().getMaxConnectionsPerRoute();
+    Semaphore inFlight = new Semaphore(limit);
+    long late = lateThreshold.toNanos();
+
+    List<ArrivalRateResult> results = new ArrayList<ArrivalRateResult>();
+    List<StripedRecorder> recorders = new ArrayList<StripedRecorder>();
+    ExecutorService executor = VirtualThreads.newExecutor("nanotests-arrival-");
+    try {
+      long stageStart = System.nanoTime();
+      for (Stage stage: stages){
+        double rps = stage.rps;
+        long duration = stage.duration;
+        ArrivalRateResult result = new ArrivalRateResult(rps);
+        StripedRecorder recorder = new StripedRecorder();
+        results.add(result);
+        recorders.add(recorder);
+
+        long scheduled = 0;
+        long dropped = 0;
+        long lateCount = 0;
+        for (long n = 0; ; n++){
+          long intended = stageStart + (long)(n * 1e9 / rps);
+          if (intended - stageStart >= duration)
+            break;
+
+          waitUntil(intended);
+          if (Thread.currentThread().isInterrupted())
+            throw new InterruptedException();
+          scheduled++;
+          if (System.nanoTime() - intended > late)
+            lateCount++;
+
+          if (!inFlight.tryAcquire()){
+            dropped++;
+            continue;
+          }
+          executor.execute(new Iteration(recorder, inFlight, intended, n));
+        }
+
+        result.setCounters(scheduled, dropped, lateCount);
+        result.setElapsed(duration);
+        stageStart += duration;
+      }
+
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new AssertionError("Load test is interrupted", e);
+    }
+
+    for (int i = 0; i < results.size(); i++)
+      recorders.get(i).addTo(results.get(i));
+    return results;
+  }
+
+  /**
+   * Waits until the given time. Parks the thread for the most of the time and spins for the rest,
+   * since the park accuracy is about tens of microseconds.
+   */
+  private static void waitUntil(long time){
+    long delay;
+    while ((delay = time - System.nanoTime()) > SPIN_THRESHOLD && !Thread.currentThread().isInterrupted())
+      LockSupport.parkNanos(delay - SPIN_THRESHOLD);
+    while (time - System.nanoTime() > 0)
+      ;
+  }
+
+  private static class Stage {
+    private final double rps;
+    private final long duration;
+
+    Stage(double rps, long duration) {
+      this.rps = rps;
+      this.duration = duration;
+    }
+  }
+
+  private class Iteration implements Runnable {
+    private final StripedRecorder recorder;
+    private final Semaphore inFlight;
+    private final long intended;
+    private final long index;
+
+    Iteration(StripedRecorder recorder, Semaphore inFlight, long intended, long index) {
+      this.recorder = recorder;
+      this.inFlight = inFlight;
+      this.intended = intended;
+      this.index = index;
+    }
+
+    @Override
+    public void run() {
+      String error = null;
+      try {
+        scenario.run();
+      } catch (Exception e) {
+        error = e.toString();
+      } catch (AssertionError e) {
+        error = e.getMessage();
+      }
+
+      try {
+        recorder.record(index, System.nanoTime() - intended, 0, error);
+      } finally {
+        inFlight.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steady-state benchmark of the single {@link Scenario}. The iterations are run one after another in the calling thread.
+ * <p>
+ * The benchmark starts with the warm-up iterations, which are not measured, so the JIT, the caches and the connection
+ * pools of both sides are warmed up. Then the iterations are measured in batches. After each batch the coefficient
+ * of variation of the means of the last several batches is calculated, and the measurement stops when it is below
+ * the tolerance. The window slides with the batches, so the drifting or switching latency keeps the measurement going
+ * however many batches are measured. The measurement is also stopped by the limits of the batches and time,
+ * in this case the result isn't stable.
+ * <pre>
+ *   Benchmark benchmark = new Benchmark(LoadRunner.httpGet("/service/status"));
+ *   benchmark.setWarmupIterations(500);
+ *   BenchmarkResult result = benchmark.run();
+ * </pre>
+ * @author BrokenEvent
+ */
+public class Benchmark {
+  private static final int MAX_ERRORS = 10;
+
+  private final Scenario scenario;
+  private int warmupIterations = 100;
+  private int batchSize = 20;
+  private int minBatches = 10;
+  private int maxBatches = 500;
+  private int window = 5;
+  private double tolerance = 0.05;
+  private double confidence = 0.99;
+  private Duration maxDuration = Duration.ofMinutes(1);
+
+  /**
+   * Initializes the benchmark for the given scenario.
+   * @param scenario scenario of the single iteration
+   */
+  public Benchmark(Scenario scenario) {
+    this.scenario = scenario;
+  }
+
+  /**
+   * Gets the count of the warm-up iterations. Default value is 100.
+   * @return count of the warm-up iterations
+   */
+  public int getWarmupIterations() {
+    return warmupIterations;
+  }
+
+  /**
+   * Sets the count of the warm-up iterations. The results of these iterations, including the failures, are ignored.
+   * @param warmupIterations count of the warm-up iterations
+   */
+  public void setWarmupIterations(int warmupIterations) {
+    if (warmupIterations < 0)
+      throw new IllegalArgumentException("Warm-up iterations can't be negative: " + warmupIterations);
+    this.warmupIterations = warmupIterations;
+  }
+
+  /**
+   * Gets the count of the iterations in the batch. Default value is 20.
+   * @return count of the iterations in the batch
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the count of the iterations in the batch.
+   * @param batchSize count of the iterations in the batch
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1)
+      throw new IllegalArgumentException("Batch size should be positive: " + batchSize);
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Gets the minimal count of the measured batches. Default value is 10.
+   * @return minimal count of the batches
+   */
+  public int getMinBatches() {
+    return minBatches;
+  }
+
+  /**
+   * Gets the maximal count of the measured batches. Default value is 500.
+   * @return maximal count of the batches
+   */
+  public int getMaxBatches() {
+    return maxBatches;
+  }
+
+  /**
+   * Sets the limits of the count of the measured batches.
+   * @param minBatches minimal count of the batches, at least 2
+   * @param maxBatches maximal count of the batches
+   */
+  public void setBatches(int minBatches, int maxBatches) {
+    if (minBatches < 2)
+      throw new IllegalArgumentException("At least 2 batches are needed: " + minBatches);
+    if (maxBatches < minBatches)
+      throw new IllegalArgumentException("Maximal count of the batches is less than minimal: " + maxBatches);
+    this.minBatches = minBatches;
+    this.maxBatches = maxBatches;
+  }
+
+  /**
+   * Gets the maximal coefficient of variation of the batch means in the window. Default value is 0.05.
+   * @return tolerance of the coefficient of variation
+   */
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  /**
+   * Gets the count of the last batches whose means are compared by the stop rule. Default value is 5.
+   * @return count of the batches in the window
+   */
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * Sets the stop rule of the measurement: it stops when the coefficient of variation of the means of the last
+   * batches is below the tolerance.
+   * @param tolerance maximal coefficient of variation of the batch means, like 0.05 for 5%
+   * @param window count of the last batches, at least 2
+   */
+  public void setStability(double tolerance, int window) {
+    if (tolerance <= 0)
+      throw new IllegalArgumentException("Tolerance should be positive: " + tolerance);
+    if (window < 2)
+      throw new IllegalArgumentException("At least 2 batches are needed in the window: " + window);
+    this.tolerance = tolerance;
+    this.window = window;
+  }
+
+  /**
+   * Gets the confidence level of the interval of the mean. Default value is 0.99.
+   * @return confidence level
+   */
+  public double getConfidence() {
+    return confidence;
+  }
+
+  /**
+   * Sets the confidence level of the interval of the mean.
+   * @param confidence confidence level in range (0..1)
+   */
+  public void setConfidence(double confidence) {
+    if (confidence <= 0 || confidence >= 1)
+      throw new IllegalArgumentException("Confidence should be in range (0..1): " + confidence);
+    this.confidence = confidence;
+  }
+
+  /**
+   * Gets the time limit of the measurement. Default value is 1 minute.
+   * @return time limit of the measurement
+   */
+  public Duration getMaxDuration() {
+    return maxDuration;
+  }
+
+  /**
+   * Sets the time limit of the measurement. The warm-up isn't limited.
+   * @param maxDuration time limit of the measurement
+   */
+  public void setMaxDuration(Duration maxDuration) {
+    this.maxDuration = maxDuration;
+  }
+
+  /**
+   * Runs the benchmark.
+   * @return result of the benchmark
+   */
+  public BenchmarkResult run(){
+    for (int i = 0; i < warmupIterations; i++){
+      try {
+        scenario.run();
+      } catch (Exception e) {
+        // warm-up results are ignored
+      } catch (AssertionError e) {
+        // warm-up results are ignored
+      }
+    }
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    List<String> errors = new ArrayList<String>();
+    double[] batchMeans = new double[maxBatches];
+    long count = 0;
+    long failed = 0;
+    double mean = 0;
+    double squares = 0;
+    int batches = 0;
+    boolean stable = false;
+
+    long started = System.nanoTime();
+    long deadline = started + maxDuration.toNanos();
+    while (batches < maxBatches && !Thread.currentThread().isInterrupted()){
+      double batchTotal = 0;
+      for (int i = 0; i < batchSize; i++){
+        long iterationStarted = System.nanoTime();
+        String error = null;
+        try {
+          scenario.run();
+        } catch (Exception e) {
+          error = e.toString();
+        } catch (AssertionError e) {
+          error = e.getMessage();
+        }
+        long latency = System.nanoTime() - iterationStarted;
+
+        histogram.recordValue(latency);
+        batchTotal += latency;
+        count++;
+        double delta = latency - mean;
+        mean += delta / count;
+        squares += delta * (latency - mean);
+        if (error != null){
+          failed++;
+          if (errors.size() < MAX_ERRORS)
+            errors.add(error);
+        }
+      }
+      batchMeans[batches++] = batchTotal / batchSize;
+
+      if (batches >= Math.max(minBatches, window) && getWindowVariation(batchMeans, batches) <= tolerance){
+        stable = true;
+        break;
+      }
+      if (System.nanoTime() - deadline >= 0)
+        break;
+    }
+
+    BenchmarkResult result = new BenchmarkResult(warmupIterations, confidence);
+    result.setElapsed(System.nanoTime() - started);
+    result.add(histogram, count, failed, errors);
+    result.setStatistics(batches, mean, count > 1 ? Math.sqrt(squares / (count - 1)) : 0,
+        getError(batchMeans, batches), stable);
+    return result;
+  }
+
+  /**
+   * Calculates the coefficient of variation of the means of the last batches in the window.
+   */
+  private double getWindowVariation(double[] batchMeans, int batches){
+    double mean = 0;
+    for (int i = batches - window; i < batches; i++)
+      mean += batchMeans[i];
+    mean /= window;
+    if (mean == 0)
+      return 0;
+
+    double squares = 0;
+    for (int i = batches - window; i < batches; i++)
+      squares += (batchMeans[i] - mean) * (batchMeans[i] - mean);
+    return Math.sqrt(squares / (window - 1)) / mean;
+  }
+
+  private double getError(double[] batchMeans, int batches){
+    if (batches < 2)
+      return Double.NaN;
+
+    double mean = 0;
+    for (int i = 0; i < batches; i++)
+      mean += batchMeans[i];
+    mean /= batches;
+
+    double squares = 0;
+    for (int i = 0; i < batches; i++)
+      squares += (batchMeans[i] - mean) * (batchMeans[i] - mean);
+
+    double stdError = Math.sqrt(squares / (batches - 1) / batches);
+    return Statistics.studentQuantile(1 - (1 - confidence) / 2, batches - 1) * stdError;
+  }
+}
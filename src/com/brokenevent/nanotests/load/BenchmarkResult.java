@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.util.Locale;
+
+/**
+ * Result of the {@link Benchmark}. The mean and the standard deviation are calculated from the exact latencies,
+ * the percentiles are taken from the histogram. The confidence interval of the mean is calculated from the means
+ * of the batches, so it isn't narrowed by the correlation of the neighbour iterations.
+ * @author BrokenEvent
+ */
+public class BenchmarkResult extends LoadResult {
+  private final long warmupIterations;
+  private final double confidence;
+  private int batches;
+  private double mean;
+  private double stdDeviation;
+  private double error;
+  private boolean stable;
+
+  BenchmarkResult(long warmupIterations, double confidence) {
+    this.warmupIterations = warmupIterations;
+    this.confidence = confidence;
+  }
+
+  void setStatistics(int batches, double mean, double stdDeviation, double error, boolean stable){
+    this.batches = batches;
+    this.mean = mean;
+    this.stdDeviation = stdDeviation;
+    this.error = error;
+    this.stable = stable;
+  }
+
+  /**
+   * Gets the count of the warm-up iterations which are not measured.
+   * @return count of the warm-up iterations
+   */
+  public long getWarmupIterations() {
+    return warmupIterations;
+  }
+
+  /**
+   * Gets the count of the measured batches.
+   * @return count of the batches
+   */
+  public int getBatches() {
+    return batches;
+  }
+
+  /**
+   * Gets the mean latency of the measured iterations.
+   * @return mean latency in nanoseconds
+   */
+  public double getMean() {
+    return mean;
+  }
+
+  /**
+   * Gets the sample standard deviation of the latency of the measured iterations.
+   * @return standard deviation in nanoseconds
+   */
+  public double getStdDeviation() {
+    return stdDeviation;
+  }
+
+  /**
+   * Gets the coefficient of variation of the latency, which is the standard deviation divided by the mean.
+   * @return coefficient of variation
+   */
+  public double getCoefficientOfVariation() {
+    return mean == 0 ? 0 : stdDeviation / mean;
+  }
+
+  /**
+   * Gets the confidence level of the interval.
+   * @return confidence level in range 0..1
+   */
+  public double getConfidence() {
+    return confidence;
+  }
+
+  /**
+   * Gets the half-width of the confidence interval of the mean.
+   * @return error of the mean in nanoseconds
+   */
+  public double getError() {
+    return error;
+  }
+
+  /**
+   * Gets the lower bound of the confidence interval of the mean.
+   * @return lower bound in nanoseconds
+   */
+  public double getLowerBound() {
+    return mean - error;
+  }
+
+  /**
+   * Gets the upper bound of the confidence interval of the mean.
+   * @return upper bound in nanoseconds
+   */
+  public double getUpperBound() {
+    return mean + error;
+  }
+
+  /**
+   * Checks if the measurement is stopped because the means of the last batches became stable. Otherwise it is
+   * stopped by the limit of the batches or time, and the result may be unreliable.
+   * @return true if the measurement reached the steady state
+   */
+  public boolean isStable() {
+    return stable;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "mean %.3f +- %.3f ms (%s%% CI), stddev %.3f ms, cv %.3f, %d batches, %d warm-up iterations%s%n",
+        mean / 1e6, error / 1e6, formatConfidence(), stdDeviation / 1e6, getCoefficientOfVariation(), batches,
+        warmupIterations, stable ? "" : ", NOT STABLE") + super.toString();
+  }
+
+  private String formatConfidence(){
+    double percent = confidence * 100;
+    return percent == Math.floor(percent) ? String.valueOf((long)percent) : String.valueOf(percent);
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.util.Locale;
+
+/**
+ * High-resolution latency histogram with log-linear buckets. Values are recorded in nanoseconds with
+ * the relative error less than 0.2% up to about 36 minutes, bigger values are recorded as the maximum one.
+ * The histogram takes about 135 KB, the histograms of the lower precision are used where many of them are kept.
+ * The histogram isn't thread-safe: use one histogram per thread and {@link #add(LatencyHistogram)} them.
+ * @author BrokenEvent
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 10;
+  private static final int MAX_MAGNITUDE = 40;
+
+  /**
+   * Maximum value which is recorded with the declared precision.
+   */
+  public static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+  private static final double[] TABLE_PERCENTILES = {50, 75, 90, 95, 99, 99.9, 99.99};
+
+  private final int subBucketBits;
+  private final int subBucketCount;
+  private final int subBucketHalf;
+  private final long[] counts;
+  private long totalCount;
+  private long min = Long.MAX_VALUE;
+  private long max;
+  private double sum;
+  private double sumOfSquares;
+
+  /**
+   * Initializes the empty histogram with the full precision.
+   */
+  public LatencyHistogram() {
+    this(SUB_BUCKET_BITS);
+  }
+
+  /**
+   * Initializes the empty histogram with the given precision. The relative error is less than <code>2^(1 - subBucketBits)</code>.
+   * @param subBucketBits count of the bits of the value kept by the bucket, from 2 to 10
+   */
+  LatencyHistogram(int subBucketBits) {
+    if (subBucketBits < 2 || subBucketBits > SUB_BUCKET_BITS)
+      throw new IllegalArgumentException("Sub-bucket bits should be in range 2.." + SUB_BUCKET_BITS + ": " + subBucketBits);
+    this.subBucketBits = subBucketBits;
+    subBucketCount = 1 << subBucketBits;
+    subBucketHalf = subBucketCount >> 1;
+    counts = new long[indexOf(MAX_VALUE) + 1];
+  }
+
+  private int indexOf(long value){
+    if (value < subBucketCount)
+      return (int)value;
+
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (subBucketBits - 1);
+    return subBucketCount + (shift - 1) * subBucketHalf + (int)(value >>> shift) - subBucketHalf;
+  }
+
+  private long highestValueAt(int index){
+    if (index < subBucketCount)
+      return index;
+
+    int shift = (index - subBucketCount) / subBucketHalf + 1;
+    long subBucket = (index - subBucketCount) % subBucketHalf + subBucketHalf;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * Records the value.
+   * @param value value in nanoseconds
+   */
+  public void recordValue(long value){
+    recordValue(value, 1);
+  }
+
+  /**
+   * Records the value several times.
+   * @param value value in nanoseconds
+   * @param count count of the records
+   */
+  public void recordValue(long value, long count){
+    if (value < 0)
+      value = 0;
+    if (value > MAX_VALUE)
+      value = MAX_VALUE;
+
+    counts[indexOf(value)] += count;
+    totalCount += count;
+    sum += (double)value * count;
+    sumOfSquares += (double)value * value * count;
+    if (value < min)
+      min = value;
+    if (value > max)
+      max = value;
+  }
+
+  /**
+   * Records the value and corrects the coordinated omission. If the value is bigger than the expected interval
+   * between the samples, the samples which are missed while the value was measured are recorded too,
+   * with the values decreasing by the interval.
+   * @param value value in nanoseconds
+   * @param expectedInterval expected interval between the samples in nanoseconds. Zero or negative value disables the correction
+   */
+  public void recordValueWithExpectedInterval(long value, long expectedInterval){
+    recordValue(value);
+    if (expectedInterval <= 0)
+      return;
+
+    for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval)
+      recordValue(missing);
+  }
+
+  /**
+   * Adds all the values recorded by another histogram of the same precision.
+   * @param other histogram to add values from
+   */
+  public void add(LatencyHistogram other){
+    if (other.subBucketBits != subBucketBits)
+      throw new IllegalArgumentException("Histograms of different precision can't be added");
+    for (int i = 0; i < counts.length; i++)
+      counts[i] += other.counts[i];
+
+    totalCount += other.totalCount;
+    sum += other.sum;
+    sumOfSquares += other.sumOfSquares;
+    if (other.min < min)
+      min = other.min;
+    if (other.max > max)
+      max = other.max;
+  }
+
+  /**
+   * Removes all the recorded values.
+   */
+  public void reset(){
+    for (int i = 0; i < counts.length; i++)
+      counts[i] = 0;
+    totalCount = 0;
+    sum = 0;
+    sumOfSquares = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+  }
+
+  /**
+   * Gets the count of the recorded values.
+   * @return count of the recorded values
+   */
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Gets the value at the given percentile. The highest value of the bucket is returned.
+   * @param percentile percentile in range 0..100
+   * @return value in nanoseconds or 0 if the histogram is empty
+   */
+  public long getValueAtPercentile(double percentile){
+    if (totalCount == 0)
+      return 0;
+
+    long countAtPercentile = Math.max(1, (long)Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+    long count = 0;
+    for (int i = 0; i < counts.length; i++){
+      count += counts[i];
+      if (count >= countAtPercentile)
+        return Math.min(highestValueAt(i), max);
+    }
+    return max;
+  }
+
+  /**
+   * Gets the minimum recorded value.
+   * @return minimum value in nanoseconds or 0 if the histogram is empty
+   */
+  public long getMin() {
+    return totalCount == 0 ? 0 : min;
+  }
+
+  /**
+   * Gets the maximum recorded value.
+   * @return maximum value in nanoseconds
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * Gets the mean of the recorded values.
+   * @return mean value in nanoseconds or 0 if the histogram is empty
+   */
+  public double getMean(){
+    return totalCount == 0 ? 0 : sum / totalCount;
+  }
+
+  /**
+   * Gets the standard deviation of the recorded values.
+   * @return standard deviation in nanoseconds or 0 if the histogram is empty
+   */
+  public double getStdDeviation(){
+    if (totalCount == 0)
+      return 0;
+
+    double mean = getMean();
+    return Math.sqrt(Math.max(0, sumOfSquares / totalCount - mean * mean));
+  }
+
+  /**
+   * Formats the percentiles table in milliseconds.
+   * @return text table of the percentiles
+   */
+  public String toPercentileTable(){
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(Locale.US, "%10s %12s%n", "percentile", "latency, ms"));
+    for (double percentile: TABLE_PERCENTILES)
+      builder.append(String.format(Locale.US, "%10s %12.3f%n", format(percentile), getValueAtPercentile(percentile) / 1e6));
+    builder.append(String.format(Locale.US, "%10s %12.3f%n", "max", max / 1e6));
+    builder.append(String.format(Locale.US, "%10s %12.3f%n", "mean", getMean() / 1e6));
+    builder.append(String.format(Locale.US, "%10s %12.3f%n", "stddev", getStdDeviation() / 1e6));
+    builder.append(String.format(Locale.US, "%10s %12d", "count", totalCount));
+    return builder.toString();
+  }
+
+  private static String format(double percentile){
+    return percentile == Math.floor(percentile) ? String.valueOf((long)percentile) : String.valueOf(percentile);
+  }
+}
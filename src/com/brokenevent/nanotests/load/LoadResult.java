@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Aggregated result of the load test.
+ * @author BrokenEvent
+ */
+public class LoadResult {
+  private static final int MAX_ERRORS = 10;
+
+  private final LatencyHistogram histogram = new LatencyHistogram();
+  private final List<String> errors = new ArrayList<String>();
+  private long requests;
+  private long failed;
+  private long elapsed;
+
+  /**
+   * Adds the iterations of the single worker to the result.
+   * @param worker histogram of the worker
+   * @param requests count of the iterations done by the worker
+   * @param failed count of the failed iterations
+   * @param errors messages of the failed iterations
+   */
+  void add(LatencyHistogram worker, long requests, long failed, List<String> errors){
+    histogram.add(worker);
+    this.requests += requests;
+    this.failed += failed;
+    for (String error: errors)
+      if (this.errors.size() < MAX_ERRORS)
+        this.errors.add(error);
+  }
+
+  void setElapsed(long elapsed) {
+    this.elapsed = elapsed;
+  }
+
+  /**
+   * Gets the latency histogram of all the iterations.
+   * @return latency histogram
+   */
+  public LatencyHistogram getHistogram() {
+    return histogram;
+  }
+
+  /**
+   * Gets the latency at the given percentile of all the iterations.
+   * @param percentile percentile in range 0..100
+   * @return latency in nanoseconds
+   */
+  public long getLatencyAtPercentile(double percentile){
+    return histogram.getValueAtPercentile(percentile);
+  }
+
+  /**
+   * Gets the count of the executed iterations.
+   * @return count of the iterations
+   */
+  public long getRequests() {
+    return requests;
+  }
+
+  /**
+   * Gets the count of the failed iterations.
+   * @return count of the failed iterations
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * Gets the messages of the first failed iterations.
+   * @return list of the error messages
+   */
+  public List<String> getErrors() {
+    return Collections.unmodifiableList(errors);
+  }
+
+  /**
+   * Gets the duration of the load test.
+   * @return duration in nanoseconds
+   */
+  public long getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * Gets the count of the iterations per second.
+   * @return throughput of the load test
+   */
+  public double getThroughput(){
+    return elapsed == 0 ? 0 : requests * 1e9 / elapsed;
+  }
+
+  String toPercentileTable(){
+    return histogram.toPercentileTable();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(Locale.US, "%d requests, %d failed in %.3f s, %.1f requests/s%n",
+        requests, failed, elapsed / 1e9, getThroughput()));
+    builder.append(toPercentileTable());
+    for (String error: errors)
+      builder.append("\n").append(error);
+    return builder.toString();
+  }
+}
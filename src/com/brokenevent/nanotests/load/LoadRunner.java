@@ -0,0 +1,283 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import com.brokenevent.nanotests.http.TestGetRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Closed-loop load generator: every worker thread runs the {@link Scenario} iterations one after another.
+ * <pre>
+ *   LoadRunner runner = new LoadRunner(LoadRunner.httpGet("/service/status"));
+ *   runner.setConcurrency(8);
+ *   LoadResult result = runner.run(10000);
+ * </pre>
+ * If the pacing is set, the latencies are corrected for the coordinated omission: an iteration which took longer
+ * than the pacing is recorded together with the iterations the worker would have started meanwhile.
+ * The unpaced workers are corrected by the expected interval set by {@link #setExpectedInterval(Duration)}.
+ * Without both of them there is no intended start of the iterations, so the latencies are recorded as is.
+ * @author BrokenEvent
+ */
+public class LoadRunner {
+  private static final int MAX_ERRORS = 10;
+
+  private final Scenario scenario;
+  private int concurrency = 1;
+  private boolean correctOmission = true;
+  private Duration pacing = Duration.ZERO;
+  private Duration expectedInterval;
+
+  /**
+   * Initializes the load runner for the given scenario.
+   * @param scenario scenario of the single iteration
+   */
+  public LoadRunner(Scenario scenario) {
+    this.scenario = scenario;
+  }
+
+  /**
+   * Creates the scenario which executes GET request for the resource. The iteration fails if the
+   * result code is 400 or greater.
+   * @param resource URL for the request (<code>/resource</code>. Uses host from the {@link com.brokenevent.nanotests.http.TestRequestImpl})
+   * @return scenario of the GET request
+   */
+  public static Scenario httpGet(final String resource){
+    return () -> {
+      TestGetRequest request = new TestGetRequest(resource);
+      request.execute();
+      request.release();
+      int code = request.getResponse().getStatusLine().getStatusCode();
+      if (code >= 400)
+        throw new AssertionError("Response for " + resource + " is " + code);
+    };
+  }
+
+  /**
+   * Gets the count of the worker threads. Default value is 1.
+   * @return count of the worker threads
+   */
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  /**
+   * Sets the count of the worker threads.
+   * The value should not exceed {@link com.brokenevent.nanotests.http.HttpClientPool#getMaxConnectionsPerRoute()}.
+   * @param concurrency count of the worker threads
+   */
+  public void setConcurrency(int concurrency) {
+    if (concurrency < 1)
+      throw new IllegalArgumentException("Concurrency should be positive: " + concurrency);
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Gets the intended interval between the starts of the iterations of the single worker. Default value is zero,
+   * so the iterations run one after another.
+   * @return pacing of the worker
+   */
+  public Duration getPacing() {
+    return pacing;
+  }
+
+  /**
+   * Sets the intended interval between the starts of the iterations of the single worker. The worker waits for
+   * the next start if the iteration is shorter. The starts are scheduled at the fixed rate, the starts missed by
+   * the longer iteration are skipped. This is the expected interval of the coordinated omission correction,
+   * so the correction is done only if the pacing is set.
+   * @param pacing pacing of the worker
+   */
+  public void setPacing(Duration pacing) {
+    if (pacing.isNegative())
+      throw new IllegalArgumentException("Pacing should not be negative: " + pacing);
+    this.pacing = pacing;
+  }
+
+  /**
+   * Gets the expected interval between the starts of the iterations of the single worker used by the coordinated
+   * omission correction. Default value is <code>null</code>, which means the pacing.
+   * @return expected interval or <code>null</code> if the pacing is used
+   */
+  public Duration getExpectedInterval() {
+    return expectedInterval;
+  }
+
+  /**
+   * Sets the expected interval between the starts of the iterations of the single worker used by the coordinated
+   * omission correction instead of the pacing. This corrects the latencies of the unpaced workers, like by
+   * the interval of the target rate or by the typical latency of the iteration.
+   * @param expectedInterval expected interval or <code>null</code> to use the pacing
+   */
+  public void setExpectedInterval(Duration expectedInterval) {
+    if (expectedInterval != null && expectedInterval.isNegative())
+      throw new IllegalArgumentException("Expected interval should not be negative: " + expectedInterval);
+    this.expectedInterval = expectedInterval;
+  }
+
+  /**
+   * Checks if the latencies are corrected for the coordinated omission. Default value is <code>true</code>.
+   * The correction is done only if the pacing or the expected interval is set.
+   * @return true if the correction is enabled
+   */
+  public boolean isCorrectOmission() {
+    return correctOmission;
+  }
+
+  /**
+   * Enables or disables the correction of the latencies for the coordinated omission.
+   * @param correctOmission true to enable the correction
+   */
+  public void setCorrectOmission(boolean correctOmission) {
+    this.correctOmission = correctOmission;
+  }
+
+  /**
+   * Runs the given count of the iterations shared between all the workers.
+   * @param iterations total count of the iterations
+   * @return result of the load test
+   */
+  public LoadResult run(long iterations){
+    final AtomicLong remaining = new AtomicLong(iterations);
+    return run(() -> remaining.getAndDecrement() > 0);
+  }
+
+  /**
+   * Runs the iterations until the given time is passed.
+   * @param duration duration of the load test
+   * @return result of the load test
+   */
+  public LoadResult runFor(Duration duration){
+    final long deadline = System.nanoTime() + duration.toNanos();
+    return run(() -> System.nanoTime() - deadline < 0);
+  }
+
+  private LoadResult run(Condition condition){
+    CountDownLatch start = new CountDownLatch(1);
+    List<Worker> workers = new ArrayList<Worker>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < concurrency; i++){
+      Worker worker = new Worker(condition, start);
+      Thread thread = new Thread(worker, "nanotests-load-" + (i + 1));
+      thread.setDaemon(true);
+      thread.start();
+      workers.add(worker);
+      threads.add(thread);
+    }
+
+    long started = System.nanoTime();
+    start.countDown();
+    try {
+      for (Thread thread: threads)
+        thread.join();
+    } catch (InterruptedException e) {
+      for (Thread thread: threads)
+        thread.interrupt();
+      Thread.currentThread().interrupt();
+      throw new AssertionError("Load test is interrupted", e);
+    }
+
+    LoadResult result = new LoadResult();
+    result.setElapsed(System.nanoTime() - started);
+    for (Worker worker: workers)
+      result.add(worker.histogram, worker.count, worker.failed, worker.errors);
+    return result;
+  }
+
+  /**
+   * Condition to run the next iteration.
+   */
+  private interface Condition {
+    boolean next();
+  }
+
+  private class Worker implements Runnable {
+    private final Condition condition;
+    private final CountDownLatch start;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final List<String> errors = new ArrayList<String>();
+    private long count;
+    private long failed;
+
+    Worker(Condition condition, CountDownLatch start) {
+      this.condition = condition;
+      this.start = start;
+    }
+
+    @Override
+    public void run() {
+      try {
+        start.await();
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      long pacing = LoadRunner.this.pacing.toNanos();
+      long expectedInterval = LoadRunner.this.expectedInterval != null ? LoadRunner.this.expectedInterval.toNanos() : pacing;
+      long next = System.nanoTime();
+      while (condition.next() && !Thread.currentThread().isInterrupted()){
+        sleepUntil(next);
+        long started = System.nanoTime();
+        String error = null;
+        try {
+          scenario.run();
+        } catch (Exception e) {
+          error = e.toString();
+        } catch (AssertionError e) {
+          error = e.getMessage();
+        }
+        long latency = System.nanoTime() - started;
+
+        if (correctOmission)
+          histogram.recordValueWithExpectedInterval(latency, expectedInterval);
+        else
+          histogram.recordValue(latency);
+
+        // the starts are scheduled at the fixed rate, so the oversleeps don't add up.
+        // The missed starts are skipped instead of running in a burst, the correction accounts them
+        next += pacing;
+        if (next - System.nanoTime() < 0)
+          next = System.nanoTime();
+        count++;
+        if (error != null){
+          failed++;
+          if (errors.size() < MAX_ERRORS)
+            errors.add(error);
+        }
+      }
+    }
+  }
+
+  private static void sleepUntil(long time){
+    long delay;
+    while ((delay = time - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted())
+      LockSupport.parkNanos(delay);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Result of the {@link SoakRunner}. In addition to the totals of the {@link LoadResult} it keeps the latency and
+ * the errors of every time window, so the drift of them during the test can be checked by the trend test.
+ * @author BrokenEvent
+ */
+public class SoakResult extends LoadResult {
+  private final long windowLength;
+  private final List<SoakWindow> windows;
+
+  SoakResult(long windowLength, List<SoakWindow> windows) {
+    this.windowLength = windowLength;
+    this.windows = Collections.unmodifiableList(new ArrayList<SoakWindow>(windows));
+  }
+
+  /**
+   * Gets the length of the time window.
+   * @return length of the window in nanoseconds
+   */
+  public long getWindowLength() {
+    return windowLength;
+  }
+
+  /**
+   * Gets the time windows in time order.
+   * @return list of the windows
+   */
+  public List<SoakWindow> getWindows() {
+    return windows;
+  }
+
+  /**
+   * Runs the trend test over the latency of the windows at the given percentile. The windows without
+   * iterations are skipped.
+   * @param percentile percentile in range 0..100
+   * @return trend of the latency, the slope is in nanoseconds per window
+   */
+  public Trend getLatencyTrend(double percentile){
+    List<Double> values = new ArrayList<Double>();
+    for (SoakWindow window: windows)
+      if (window.getRequests() > 0)
+        values.add((double)window.getHistogram().getValueAtPercentile(percentile));
+    return Trend.mannKendall(toArray(values));
+  }
+
+  /**
+   * Runs the trend test over the error rate of the windows. The windows without iterations are skipped.
+   * @return trend of the error rate, the slope is the change of the rate per window
+   */
+  public Trend getErrorRateTrend(){
+    List<Double> values = new ArrayList<Double>();
+    for (SoakWindow window: windows)
+      if (window.getRequests() > 0)
+        values.add(window.getErrorRate());
+    return Trend.mannKendall(toArray(values));
+  }
+
+  private static double[] toArray(List<Double> values){
+    double[] result = new double[values.size()];
+    for (int i = 0; i < result.length; i++)
+      result[i] = values.get(i);
+    return result;
+  }
+
+  /**
+   * Formats the table of the windows with their throughput, error rate and latency percentiles.
+   * @return table of the windows
+   */
+  public String toWindowTable(){
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(Locale.US, "%10s %10s %10s %8s %10s %10s %10s%n", "start, s", "requests", "failed", "errors",
+        "p50, ms", "p99, ms", "max, ms"));
+    for (SoakWindow window: windows){
+      LatencyHistogram histogram = window.getHistogram();
+      builder.append(String.format(Locale.US, "%10.1f %10d %10d %7.2f%% %10.3f %10.3f %10.3f%n", window.getStart() / 1e9,
+          window.getRequests(), window.getFailed(), window.getErrorRate() * 100,
+          histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6, histogram.getMax() / 1e6));
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + "\n" + toWindowTable();
+  }
+}
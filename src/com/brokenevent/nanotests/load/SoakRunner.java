@@ -0,0 +1,254 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Long-running load test which finds the slow degradation of the server, like leaks, growing caches or exhausted
+ * connections. The users run the {@link Scenario} iterations for the whole duration, and the iterations are
+ * recorded to the time windows by their start time. The totals of the result are recorded with the full precision,
+ * and the windows keep the smaller histograms of the lower precision. The drift of the latency and the error rate between the windows
+ * is checked by the Mann-Kendall trend test.
+ * <pre>
+ *   SoakRunner runner = new SoakRunner(LoadRunner.httpGet("/service/status"));
+ *   runner.setUsers(20);
+ *   runner.setDuration(Duration.ofMinutes(30));
+ *   runner.setWindow(Duration.ofMinutes(1));
+ *   SoakResult result = runner.run();
+ *
+ *   assertNoDrift(result);
+ * </pre>
+ * The users are run in the virtual threads if the JVM supports them.
+ * @author BrokenEvent
+ */
+public class SoakRunner {
+  /**
+   * Minimal count of the windows for the trend test.
+   */
+  public static final int MIN_WINDOWS = 4;
+  /**
+   * Maximal count of the windows, which limits the memory taken by their histograms to about 100 MB.
+   * The trend test keeps at most 4 MB of the slopes however many windows there are.
+   */
+  public static final int MAX_WINDOWS = 10000;
+
+  private final Scenario scenario;
+  private int users = 1;
+  private Duration warmup = Duration.ZERO;
+  private Duration duration = Duration.ofMinutes(10);
+  private Duration window = Duration.ofSeconds(30);
+  private Duration thinkTime = Duration.ZERO;
+  private Duration pacing = Duration.ZERO;
+  private SoakWindow[] windows;
+  private StripedRecorder recorder;
+
+  /**
+   * Initializes the runner for the given scenario.
+   * @param scenario scenario of the single user iteration
+   */
+  public SoakRunner(Scenario scenario) {
+    this.scenario = scenario;
+  }
+
+  /**
+   * Gets the count of the simulated users. Default value is 1.
+   * @return count of the users
+   */
+  public int getUsers() {
+    return users;
+  }
+
+  /**
+   * Sets the count of the simulated users.
+   * @param users count of the users
+   */
+  public void setUsers(int users) {
+    if (users < 1)
+      throw new IllegalArgumentException("Users count should be positive: " + users);
+    this.users = users;
+  }
+
+  /**
+   * Gets the duration of the warm-up. Default value is zero.
+   * @return warm-up duration
+   */
+  public Duration getWarmup() {
+    return warmup;
+  }
+
+  /**
+   * Sets the duration of the warm-up, during which the users are running, but the iterations are not recorded.
+   * @param warmup warm-up duration
+   */
+  public void setWarmup(Duration warmup) {
+    this.warmup = warmup;
+  }
+
+  /**
+   * Gets the duration of the measurement. Default value is 10 minutes.
+   * @return measurement duration
+   */
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /**
+   * Sets the duration of the measurement after the warm-up.
+   * @param duration measurement duration
+   */
+  public void setDuration(Duration duration) {
+    this.duration = duration;
+  }
+
+  /**
+   * Gets the length of the time window. Default value is 30 seconds.
+   * @return window length
+   */
+  public Duration getWindow() {
+    return window;
+  }
+
+  /**
+   * Sets the length of the time window. The duration should contain at least {@link #MIN_WINDOWS} windows
+   * and at most {@link #MAX_WINDOWS} windows, and the trend test is reliable for 10 and more windows.
+   * @param window window length
+   */
+  public void setWindow(Duration window) {
+    if (window.isNegative() || window.isZero())
+      throw new IllegalArgumentException("Window should be positive: " + window);
+    this.window = window;
+  }
+
+  /**
+   * Gets the pause between the iterations of the single user. Default value is zero.
+   * @return think time of the user
+   */
+  public Duration getThinkTime() {
+    return thinkTime;
+  }
+
+  /**
+   * Sets the pause between the iterations of the single user.
+   * @param thinkTime think time of the user
+   */
+  public void setThinkTime(Duration thinkTime) {
+    this.thinkTime = thinkTime;
+  }
+
+  /**
+   * Gets the intended interval between the starts of the iterations of the single user. Default value is zero.
+   * @return pacing of the user
+   */
+  public Duration getPacing() {
+    return pacing;
+  }
+
+  /**
+   * Sets the intended interval between the starts of the iterations of the single user. The user waits for the next
+   * start if the iteration and the think time are shorter. This is the expected interval of the coordinated omission
+   * correction, so the latencies are corrected only if the pacing is set.
+   * @param pacing pacing of the user
+   */
+  public void setPacing(Duration pacing) {
+    if (pacing.isNegative())
+      throw new IllegalArgumentException("Pacing should not be negative: " + pacing);
+    this.pacing = pacing;
+  }
+
+  /**
+   * Runs the warm-up and the measurement.
+   * @return result of the measurement with the time windows
+   */
+  public SoakResult run(){
+    long windowLength = window.toNanos();
+    long count = (duration.toNanos() + windowLength - 1) / windowLength;
+    if (count < MIN_WINDOWS)
+      throw new IllegalStateException("Duration " + duration + " should contain at least " + MIN_WINDOWS + " windows of " + window);
+    if (count > MAX_WINDOWS)
+      throw new IllegalStateException("Duration " + duration + " should contain at most " + MAX_WINDOWS + " windows of " + window);
+
+    windows = new SoakWindow[(int)count];
+    for (int i = 0; i < windows.length; i++)
+      windows[i] = new SoakWindow(i * windowLength);
+    recorder = new StripedRecorder();
+
+    final long measureStart = System.nanoTime() + warmup.toNanos();
+    final long end = measureStart + duration.toNanos();
+
+    ExecutorService executor = VirtualThreads.newExecutor("nanotests-soak-");
+    try {
+      for (int i = 0; i < users; i++){
+        final int user = i;
+        executor.execute(() -> runUser(user, measureStart, end));
+      }
+      executor.shutdown();
+      if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS))
+        throw new AssertionError("Soak test isn't finished");
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new AssertionError("Soak test is interrupted", e);
+    }
+
+    SoakResult result = new SoakResult(windowLength, Arrays.asList(windows));
+    recorder.addTo(result);
+    result.setElapsed(duration.toNanos());
+    return result;
+  }
+
+  private void runUser(int user, long measureStart, long end){
+    long windowLength = window.toNanos();
+    long pacing = this.pacing.toNanos();
+    long started;
+    while ((started = System.nanoTime()) - end < 0 && !Thread.currentThread().isInterrupted()){
+      String error = null;
+      try {
+        scenario.run();
+      } catch (Exception e) {
+        error = e.toString();
+      } catch (AssertionError e) {
+        error = e.getMessage();
+      }
+      long latency = System.nanoTime() - started;
+
+      if (started - measureStart >= 0){
+        windows[(int)((started - measureStart) / windowLength)].record(latency, pacing, error != null);
+        recorder.record(user, latency, pacing, error);
+      }
+      sleepUntil(Math.max(System.nanoTime() + thinkTime.toNanos(), started + pacing));
+    }
+  }
+
+  private static void sleepUntil(long time){
+    long delay;
+    while ((delay = time - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted())
+      LockSupport.parkNanos(delay);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+/**
+ * Iterations of the {@link SoakRunner} started in the single time window. The soak test keeps many windows, so
+ * the latency of the window is recorded with the relative error less than 3.2%. The histogram is allocated
+ * when the first iteration is recorded.
+ * @author BrokenEvent
+ */
+public class SoakWindow {
+  private static final int SUB_BUCKET_BITS = 6;
+
+  private final long start;
+  private LatencyHistogram histogram;
+  private long requests;
+  private long failed;
+
+  SoakWindow(long start) {
+    this.start = start;
+  }
+
+  /**
+   * Records the iteration. The window has a single lock, which is enough because the iterations are much longer
+   * than the recording.
+   */
+  synchronized void record(long latency, long expectedInterval, boolean error){
+    if (histogram == null)
+      histogram = new LatencyHistogram(SUB_BUCKET_BITS);
+    histogram.recordValueWithExpectedInterval(latency, expectedInterval);
+    requests++;
+    if (error)
+      failed++;
+  }
+
+  /**
+   * Gets the start of the window since the start of the measurement.
+   * @return start of the window in nanoseconds
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * Gets the latency histogram of the iterations of the window.
+   * @return latency histogram, empty if the window has no iterations
+   */
+  public synchronized LatencyHistogram getHistogram() {
+    return histogram != null ? histogram : new LatencyHistogram(SUB_BUCKET_BITS);
+  }
+
+  /**
+   * Gets the count of the iterations started in the window.
+   * @return count of the iterations
+   */
+  public synchronized long getRequests() {
+    return requests;
+  }
+
+  /**
+   * Gets the count of the failed iterations started in the window.
+   * @return count of the failed iterations
+   */
+  public synchronized long getFailed() {
+    return failed;
+  }
+
+  /**
+   * Gets the share of the failed iterations of the window.
+   * @return error rate in range 0..1
+   */
+  public synchronized double getErrorRate(){
+    return requests == 0 ? 0 : (double)failed / requests;
+  }
+}
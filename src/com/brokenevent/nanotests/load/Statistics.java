@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+/**
+ * Statistical functions used by the load runners.
+ * @author BrokenEvent
+ */
+final class Statistics {
+  private static final double[] A = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+      1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+  private static final double[] B = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+      6.680131188771972e+01, -1.328068155288572e+01};
+  private static final double[] C = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+      -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+  private static final double[] D = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+      3.754408661907416e+00};
+  private static final double P_LOW = 0.02425;
+
+  private Statistics() {}
+
+  /**
+   * Calculates the quantile of the standard normal distribution (Acklam's approximation,
+   * relative error is below 1.2e-9).
+   * @param p probability in range (0..1)
+   * @return value which the standard normal variable doesn't exceed with the given probability
+   */
+  static double normalQuantile(double p){
+    if (p <= 0 || p >= 1)
+      throw new IllegalArgumentException("Probability should be in range (0..1): " + p);
+
+    if (p < P_LOW){
+      double q = Math.sqrt(-2 * Math.log(p));
+      return (((((C[0] * q + C[1]) * q + C[2]) * q + C[3]) * q + C[4]) * q + C[5]) /
+          ((((D[0] * q + D[1]) * q + D[2]) * q + D[3]) * q + 1);
+    }
+    if (p > 1 - P_LOW)
+      return -normalQuantile(1 - p);
+
+    double q = p - 0.5;
+    double r = q * q;
+    return (((((A[0] * r + A[1]) * r + A[2]) * r + A[3]) * r + A[4]) * r + A[5]) * q /
+        (((((B[0] * r + B[1]) * r + B[2]) * r + B[3]) * r + B[4]) * r + 1);
+  }
+
+  /**
+   * Calculates the quantile of the Student's t-distribution using the Cornish-Fisher expansion
+   * (Abramowitz and Stegun, 26.7.5). The error is below 0.1% for 5 and more degrees of freedom.
+   * @param p probability in range (0..1)
+   * @param degreesOfFreedom degrees of freedom
+   * @return value which the t-distributed variable doesn't exceed with the given probability
+   */
+  static double studentQuantile(double p, int degreesOfFreedom){
+    if (degreesOfFreedom < 1)
+      throw new IllegalArgumentException("Degrees of freedom should be positive: " + degreesOfFreedom);
+
+    double z = normalQuantile(p);
+    double z2 = z * z;
+    double n = degreesOfFreedom;
+    double g1 = (z2 + 1) * z / 4;
+    double g2 = ((5 * z2 + 16) * z2 + 3) * z / 96;
+    double g3 = (((3 * z2 + 19) * z2 + 17) * z2 - 15) * z / 384;
+    double g4 = ((((79 * z2 + 776) * z2 + 1482) * z2 - 1920) * z2 - 945) * z / 92160;
+    return z + g1 / n + g2 / (n * n) + g3 / (n * n * n) + g4 / (n * n * n * n);
+  }
+
+  /**
+   * Calculates the cumulative distribution function of the standard normal distribution using the Chebyshev
+   * approximation of the complementary error function (Numerical Recipes, 6.2), the relative error is below 1.2e-7.
+   * @param x value of the standard normal variable
+   * @return probability that the variable doesn't exceed the value
+   */
+  static double normalCdf(double x){
+    double z = Math.abs(x) / Math.sqrt(2);
+    double t = 1 / (1 + 0.5 * z);
+    double erfc = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418 +
+        t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 + t * (-0.82215223 + t * 0.17087277)))))))));
+    return x >= 0 ? 1 - erfc / 2 : erfc / 2;
+  }
+}
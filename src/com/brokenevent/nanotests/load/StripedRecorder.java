@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread-safe recorder of the iterations for the runners with many threads. The iterations are recorded to
+ * a small set of histograms with separate locks, so the threads rarely wait for each other.
+ * @author BrokenEvent
+ */
+class StripedRecorder {
+  private static final int MAX_ERRORS = 10;
+  private static final int STRIPES = Runtime.getRuntime().availableProcessors() * 2;
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[STRIPES];
+  private final long[] requests = new long[STRIPES];
+  private final long[] failed = new long[STRIPES];
+  private final List<String> errors = new ArrayList<String>();
+
+  StripedRecorder() {
+    for (int i = 0; i < STRIPES; i++)
+      histograms[i] = new LatencyHistogram();
+  }
+
+  /**
+   * Records the iteration.
+   * @param hint any number to select the stripe, like user index
+   * @param latency latency of the iteration in nanoseconds
+   * @param expectedInterval intended interval between the starts of the iterations for the coordinated omission
+   *                         correction or 0 to record the latency as is
+   * @param error error message of the failed iteration or <code>null</code>
+   */
+  void record(long hint, long latency, long expectedInterval, String error){
+    int stripe = (int)((hint & Long.MAX_VALUE) % STRIPES);
+    LatencyHistogram histogram = histograms[stripe];
+    synchronized (histogram){
+      histogram.recordValueWithExpectedInterval(latency, expectedInterval);
+      requests[stripe]++;
+      if (error != null)
+        failed[stripe]++;
+    }
+
+    if (error != null)
+      synchronized (errors){
+        if (errors.size() < MAX_ERRORS)
+          errors.add(error);
+      }
+  }
+
+  /**
+   * Adds all the recorded iterations to the result.
+   * @param result result to add iterations to
+   */
+  void addTo(LoadResult result){
+    LatencyHistogram histogram = new LatencyHistogram();
+    long totalRequests = 0;
+    long totalFailed = 0;
+    for (int i = 0; i < STRIPES; i++)
+      synchronized (histograms[i]){
+        histogram.add(histograms[i]);
+        totalRequests += requests[i];
+        totalFailed += failed[i];
+      }
+
+    synchronized (errors){
+      result.add(histogram, totalRequests, totalFailed, errors);
+    }
+  }
+}
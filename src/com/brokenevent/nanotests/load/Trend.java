@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Result of the Mann-Kendall trend test over the series of values, like the latencies of the soak test windows.
+ * The test is rank-based, so it doesn't depend on the distribution of the values and isn't broken by a few outliers.
+ * The slope is estimated by the Theil-Sen estimator, which is the median of the slopes between all pairs of the values.
+ * For the long series the median is taken over the random sample of the pairs, so the memory use stays bounded.
+ * @author BrokenEvent
+ */
+public final class Trend {
+  /**
+   * Maximal count of the pairs whose slopes are kept for the Theil-Sen estimator, about 4 MB.
+   */
+  private static final int MAX_SLOPES = 1 << 19;
+
+  private final int count;
+  private final long statistic;
+  private final double z;
+  private final double pValue;
+  private final double slope;
+
+  private Trend(int count, long statistic, double z, double pValue, double slope) {
+    this.count = count;
+    this.statistic = statistic;
+    this.z = z;
+    this.pValue = pValue;
+    this.slope = slope;
+  }
+
+  /**
+   * Runs the Mann-Kendall test over the series. The variance of the statistic is corrected for the tied values
+   * and the p-value is calculated by the normal approximation, which is good enough for 10 and more values.
+   * @param values series of the values in time order
+   * @return trend of the series
+   */
+  static Trend mannKendall(double[] values){
+    int n = values.length;
+    long statistic = 0;
+    long pairs = n * (n - 1L) / 2;
+    boolean sampled = pairs > MAX_SLOPES;
+    double[] slopes = new double[(int)Math.min(pairs, MAX_SLOPES)];
+    int k = 0;
+    for (int i = 0; i < n; i++)
+      for (int j = i + 1; j < n; j++){
+        statistic += Double.compare(values[j], values[i]);
+        if (!sampled)
+          slopes[k++] = (values[j] - values[i]) / (j - i);
+      }
+
+    if (sampled){
+      // the fixed seed keeps the estimate the same for the same series
+      Random random = new Random(n);
+      for (k = 0; k < slopes.length; k++){
+        int i = random.nextInt(n);
+        int j = random.nextInt(n - 1);
+        if (j >= i)
+          j++;
+        slopes[k] = (values[Math.max(i, j)] - values[Math.min(i, j)]) / Math.abs(j - i);
+      }
+    }
+
+    double variance = n * (n - 1.0) * (2 * n + 5);
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    for (int i = 0; i < n; ){
+      int j = i;
+      while (j < n && sorted[j] == sorted[i])
+        j++;
+      double ties = j - i;
+      variance -= ties * (ties - 1) * (2 * ties + 5);
+      i = j;
+    }
+    variance /= 18;
+
+    double z = 0;
+    if (variance > 0 && statistic != 0)
+      z = (statistic - Math.signum(statistic)) / Math.sqrt(variance);
+
+    double slope = 0;
+    if (slopes.length > 0){
+      Arrays.sort(slopes);
+      int middle = slopes.length / 2;
+      slope = slopes.length % 2 == 1 ? slopes[middle] : (slopes[middle - 1] + slopes[middle]) / 2;
+    }
+
+    return new Trend(n, statistic, z, 1 - Statistics.normalCdf(z), slope);
+  }
+
+  /**
+   * Gets the count of the values in the series.
+   * @return count of the values
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the Mann-Kendall statistic S, which is the count of the increasing pairs minus the count of the decreasing pairs.
+   * @return statistic of the test
+   */
+  public long getStatistic() {
+    return statistic;
+  }
+
+  /**
+   * Gets the normalized statistic of the test.
+   * @return z-score of the statistic
+   */
+  public double getZ() {
+    return z;
+  }
+
+  /**
+   * Gets the one-sided p-value of the upward trend, which is the probability to get such or stronger upward trend
+   * from the series without any trend.
+   * @return p-value in range 0..1
+   */
+  public double getPValue() {
+    return pValue;
+  }
+
+  /**
+   * Gets the Theil-Sen estimate of the change of the value between the neighbour points of the series.
+   * @return slope per point
+   */
+  public double getSlope() {
+    return slope;
+  }
+
+  /**
+   * Checks if the series trends upward with the given significance.
+   * @param significance significance level, like 0.05
+   * @return true if the upward trend is significant
+   */
+  public boolean isIncreasing(double significance){
+    return statistic > 0 && pValue < significance;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "S = %d, z = %.3f, p = %.4f over %d windows", statistic, z, pValue, count);
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.load;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator which simulates the given count of the users. Every user runs the {@link Scenario} iterations
+ * one after another in its own thread. Virtual threads are used if the JVM supports them, so thousands of users
+ * don't need thousands of platform threads.
+ * <pre>
+ *   UserLoadRunner runner = new UserLoadRunner(LoadRunner.httpGet("/service/status"));
+ *   runner.setUsers(2000);
+ *   runner.setRampUp(Duration.ofSeconds(20));
+ *   runner.setHold(Duration.ofMinutes(2));
+ *   LoadResult result = runner.run();
+ *
+ *   assertErrorRateBelow(result, 0.001);
+ *   assertLatencyBelow(result, 99, Duration.ofMillis(200));
+ * </pre>
+ * The users are started evenly during the ramp-up phase and run until the end of the hold phase.
+ * Only the iterations started in the hold phase are recorded to the result.
+ * All the users share the {@link com.brokenevent.nanotests.http.HttpClientPool}, so its connection limits
+ * should be raised for the large user counts.
+ * @author BrokenEvent
+ */
+public class UserLoadRunner {
+  private final Scenario scenario;
+  private int users = 1;
+  private Duration rampUp = Duration.ZERO;
+  private Duration hold = Duration.ofSeconds(10);
+  private Duration thinkTime = Duration.ZERO;
+  private Duration pacing = Duration.ZERO;
+  private StripedRecorder recorder;
+
+  /**
+   * Initializes the runner for the given scenario.
+   * @param scenario scenario of the single user iteration
+   */
+  public UserLoadRunner(Scenario scenario) {
+    this.scenario = scenario;
+  }
+
+  /**
+   * Checks if the users are run in the virtual threads.
+   * @return true if the JVM supports virtual threads
+   */
+  public static boolean isVirtualThreads(){
+    return VirtualThreads.isSupported();
+  }
+
+  /**
+   * Gets the count of the simulated users. Default value is 1.
+   * @return count of the users
+   */
+  public int getUsers() {
+    return users;
+  }
+
+  /**
+   * Sets the count of the simulated users.
+   * @param users count of the users
+   */
+  public void setUsers(int users) {
+    if (users < 1)
+      throw new IllegalArgumentException("Users count should be positive: " + users);
+    this.users = users;
+  }
+
+  /**
+   * Gets the duration of the ramp-up phase. Default value is zero, so all the users start at once.
+   * @return ramp-up duration
+   */
+  public Duration getRampUp() {
+    return rampUp;
+  }
+
+  /**
+   * Sets the duration of the ramp-up phase during which the users are started.
+   * @param rampUp ramp-up duration
+   */
+  public void setRampUp(Duration rampUp) {
+    this.rampUp = rampUp;
+  }
+
+  /**
+   * Gets the duration of the hold phase. Default value is 10 seconds.
+   * @return hold duration
+   */
+  public Duration getHold() {
+    return hold;
+  }
+
+  /**
+   * Sets the duration of the hold phase during which all the users are running and the results are recorded.
+   * @param hold hold duration
+   */
+  public void setHold(Duration hold) {
+    this.hold = hold;
+  }
+
+  /**
+   * Gets the pause between the iterations of the single user. Default value is zero.
+   * @return think time of the user
+   */
+  public Duration getThinkTime() {
+    return thinkTime;
+  }
+
+  /**
+   * Sets the pause between the iterations of the single user.
+   * @param thinkTime think time of the user
+   */
+  public void setThinkTime(Duration thinkTime) {
+    this.thinkTime = thinkTime;
+  }
+
+  /**
+   * Gets the intended interval between the starts of the iterations of the single user. Default value is zero.
+   * @return pacing of the user
+   */
+  public Duration getPacing() {
+    return pacing;
+  }
+
+  /**
+   * Sets the intended interval between the starts of the iterations of the single user. The user waits for the next
+   * start if the iteration and the think time are shorter. This is the expected interval of the coordinated omission
+   * correction, so the latencies are corrected only if the pacing is set.
+   * @param pacing pacing of the user
+   */
+  public void setPacing(Duration pacing) {
+    if (pacing.isNegative())
+      throw new IllegalArgumentException("Pacing should not be negative: " + pacing);
+    this.pacing = pacing;
+  }
+
+  /**
+   * Runs the ramp-up and hold phases.
+   * @return result of the hold phase
+   */
+  public LoadResult run(){
+    recorder = new StripedRecorder();
+
+    long started = System.nanoTime();
+    final long holdStart = started + rampUp.toNanos();
+    final long end = holdStart + hold.toNanos();
+
+    ExecutorService executor = VirtualThreads.newExecutor("nanotests-user-");
+    try {
+      for (int i = 0; i < users; i++){
+        final int user = i;
+        final long userStart = started + rampUp.toNanos() * i / users;
+        executor.execute(() -> runUser(user, userStart, holdStart, end));
+      }
+      executor.shutdown();
+      if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS))
+        throw new AssertionError("Load test isn't finished");
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new AssertionError("Load test is interrupted", e);
+    }
+
+    LoadResult result = new LoadResult();
+    result.setElapsed(hold.toNanos());
+    recorder.addTo(result);
+    return result;
+  }
+
+  private void runUser(int user, long userStart, long holdStart, long end){
+    sleepUntil(userStart);
+
+    long pacing = this.pacing.toNanos();
+    long started;
+    while ((started = System.nanoTime()) - end < 0 && !Thread.currentThread().isInterrupted()){
+      String error = null;
+      try {
+        scenario.run();
+      } catch (Exception e) {
+        error = e.toString();
+      } catch (AssertionError e) {
+        error = e.getMessage();
+      }
+      long latency = System.nanoTime() - started;
+
+      if (started - holdStart >= 0)
+        recorder.record(user, latency, pacing, error);
+      sleepUntil(Math.max(System.nanoTime() + thinkTime.toNanos(), started + pacing));
+    }
+  }
+
+  private static void sleepUntil(long time){
+    long delay;
+    while ((delay = time - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted())
+      LockSupport.parkNanos(delay);
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.server;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Request received by the {@link StubServer}.
+ * @author BrokenEvent
+ */
+public class StubRequest {
+  private final String method;
+  private final String uri;
+  private final String version;
+  private final Map<String, String> headers;
+  private final byte[] content;
+
+  StubRequest(String method, String uri, String version, Map<String, String> headers, byte[] content) {
+    this.method = method;
+    this.uri = uri;
+    this.version = version;
+    this.headers = headers;
+    this.content = content;
+  }
+
+  /**
+   * Gets the method of the request.
+   * @return method of the request
+   */
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * Gets the URI of the request as it is sent by the client.
+   * @return URI of the request
+   */
+  public String getUri() {
+    return uri;
+  }
+
+  /**
+   * Gets the path of the request URI without the query.
+   * @return path of the request
+   */
+  public String getPath() {
+    int index = uri.indexOf('?');
+    return index == -1 ? uri : uri.substring(0, index);
+  }
+
+  /**
+   * Gets the query of the request URI.
+   * @return query of the request or <code>null</code> if the URI has no query
+   */
+  public String getQuery() {
+    int index = uri.indexOf('?');
+    return index == -1 ? null : uri.substring(index + 1);
+  }
+
+  /**
+   * Gets the protocol version of the request, like <code>HTTP/1.1</code>.
+   * @return protocol version of the request
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets the value of the request header. The header names are case insensitive.
+   * @param name name of the header
+   * @return value of the header or <code>null</code> if the request has no such header
+   */
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  /**
+   * Gets all the headers of the request. The map has case insensitive keys.
+   * @return headers of the request
+   */
+  public Map<String, String> getHeaders() {
+    return Collections.unmodifiableMap(headers);
+  }
+
+  /**
+   * Gets the content of the request.
+   * @return content of the request, empty array if the request has no content
+   */
+  public byte[] getContent() {
+    return content;
+  }
+
+  /**
+   * Gets the content of the request as a string decoded with the given charset.
+   * @param charset charset of the content
+   * @return text content of the request
+   */
+  public String getStringContent(Charset charset) {
+    return new String(content, charset);
+  }
+
+  /**
+   * Gets the content of the request as UTF-8 string.
+   * @return text content of the request
+   */
+  public String getStringContent() {
+    return getStringContent(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return method + " " + uri;
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Canned response of the {@link StubServer}. The response can be shared by many requests and routes.
+ * The <code>Content-Length</code> and <code>Connection</code> headers are set by the server.
+ * The content of <code>204</code> and <code>304</code> responses is never sent.
+ * @author BrokenEvent
+ */
+public class StubResponse {
+  private final int status;
+  private final Map<String, String> headers = new LinkedHashMap<String, String>();
+  private byte[] content = new byte[0];
+  private long delay;
+
+  /**
+   * Initializes the response with the given status and no content.
+   * @param status http status code
+   */
+  public StubResponse(int status) {
+    this.status = status;
+  }
+
+  /**
+   * Initializes the response with the given status and text content. The content type is set to
+   * <code>text/plain; charset=UTF-8</code>.
+   * @param status http status code
+   * @param content text content of the response
+   */
+  public StubResponse(int status, String content) {
+    this(status);
+    this.content = content.getBytes(StandardCharsets.UTF_8);
+    headers.put("Content-Type", "text/plain; charset=UTF-8");
+  }
+
+  /**
+   * Gets the status code of the response.
+   * @return http status code
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  /**
+   * Sets the header of the response. If the header with such name already exists, it will be overwritten.
+   * @param name name of the header
+   * @param value value of the header
+   * @return this response
+   */
+  public synchronized StubResponse setHeader(String name, String value) {
+    headers.put(name, value);
+    return this;
+  }
+
+  /**
+   * Sets the binary content of the response.
+   * @param content content of the response
+   * @return this response
+   */
+  public synchronized StubResponse setContent(byte[] content) {
+    this.content = content;
+    return this;
+  }
+
+  /**
+   * Sets the text content of the response encoded as UTF-8. The content type is set to
+   * <code>text/plain; charset=UTF-8</code> if it isn't set yet.
+   * @param content text content of the response
+   * @return this response
+   */
+  public synchronized StubResponse setContent(String content) {
+    this.content = content.getBytes(StandardCharsets.UTF_8);
+    if (!headers.containsKey("Content-Type"))
+      headers.put("Content-Type", "text/plain; charset=UTF-8");
+    return this;
+  }
+
+  /**
+   * Sets the delay before the response is sent. The delay doesn't block the server, so other connections
+   * are served meanwhile.
+   * @param delay delay of the response
+   * @return this response
+   */
+  public synchronized StubResponse setDelay(Duration delay) {
+    this.delay = delay.toNanos();
+    return this;
+  }
+
+  /**
+   * Gets the delay before the response is sent.
+   * @return delay of the response in nanoseconds
+   */
+  public synchronized long getDelay() {
+    return delay;
+  }
+
+  synchronized ByteBuffer encode(boolean keepAlive, boolean head) {
+    StringBuilder builder = new StringBuilder(128);
+    builder.append("HTTP/1.1 ").append(status).append(' ').append(getReason(status)).append("\r\n");
+    for (Map.Entry<String, String> header: headers.entrySet())
+      builder.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+    boolean empty = status == 204 || status == 304;
+    if (!empty)
+      builder.append("Content-Length: ").append(content.length).append("\r\n");
+    if (!keepAlive)
+      builder.append("Connection: close\r\n");
+    builder.append("\r\n");
+
+    byte[] line = builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+    boolean body = !head && !empty;
+    ByteBuffer buffer = ByteBuffer.allocate(line.length + (body ? content.length : 0));
+    buffer.put(line);
+    if (body)
+      buffer.put(content);
+    buffer.flip();
+    return buffer;
+  }
+
+  private static String getReason(int status) {
+    switch (status) {
+      case 200: return "OK";
+      case 201: return "Created";
+      case 204: return "No Content";
+      case 301: return "Moved Permanently";
+      case 302: return "Found";
+      case 304: return "Not Modified";
+      case 400: return "Bad Request";
+      case 401: return "Unauthorized";
+      case 403: return "Forbidden";
+      case 404: return "Not Found";
+      case 411: return "Length Required";
+      case 413: return "Content Too Large";
+      case 429: return "Too Many Requests";
+      case 431: return "Request Header Fields Too Large";
+      case 500: return "Internal Server Error";
+      case 501: return "Not Implemented";
+      case 502: return "Bad Gateway";
+      case 503: return "Service Unavailable";
+      case 504: return "Gateway Timeout";
+      default: return "Status";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "HTTP " + status;
+  }
+}
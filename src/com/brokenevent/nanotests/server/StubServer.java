@@ -0,0 +1,630 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight embedded http server which serves canned responses. It is intended to stand in for the backends
+ * in tests and to be the far end of the load tests.
+ * <p>
+ * The server uses a single thread with non-blocking I/O, so it starts in milliseconds and serves thousands of
+ * connections. The delays of the responses are scheduled and don't block the thread.
+ * Keep-alive, pipelined requests and chunked request content are supported.
+ * <p>
+ * The routes are matched by the method and the path of the request without the query. If no route matches,
+ * the default handler is used, which responds with <code>404</code>. <code>HEAD</code> requests use
+ * the <code>GET</code> routes unless they have their own. The routes can be changed while the server
+ * is running.
+ * <pre>
+ *   StubServer server = new StubServer();
+ *   server.addRoute("GET", "/status", new StubResponse(200, "ok"));
+ *   server.start();
+ *   TestGetRequest.setHostUrl(server.getUrl());
+ * </pre>
+ * @author BrokenEvent
+ */
+public class StubServer implements Closeable {
+  private static final int BUFFER_SIZE = 8192;
+  private static final int MAX_HEAD_SIZE = 64 * 1024;
+  private static final int BACKLOG = 4096;
+  /**
+   * Default maximal size of the request content.
+   */
+  public static final int DEFAULT_MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+  private final Map<String, StubHandler> routes = new ConcurrentHashMap<String, StubHandler>();
+  private final AtomicLong requestCount = new AtomicLong();
+  private volatile int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+  private volatile StubHandler defaultHandler = request -> new StubResponse(404, "Not found: " + request.getPath());
+  private final InetAddress address;
+  private int port;
+
+  private ServerSocketChannel server;
+  private Selector selector;
+  private Thread thread;
+  private volatile boolean running;
+  private final PriorityQueue<DelayedResponse> delayed = new PriorityQueue<DelayedResponse>();
+
+  /**
+   * Initializes the server on the loopback address and a free port.
+   */
+  public StubServer() {
+    this(0);
+  }
+
+  /**
+   * Initializes the server on the loopback address and the given port.
+   * @param port port to listen to, 0 to choose a free port
+   */
+  public StubServer(int port) {
+    this(InetAddress.getLoopbackAddress(), port);
+  }
+
+  /**
+   * Initializes the server on the given address and port.
+   * @param address address to listen to
+   * @param port port to listen to, 0 to choose a free port
+   */
+  public StubServer(InetAddress address, int port) {
+    this.address = address;
+    this.port = port;
+  }
+
+  /**
+   * Adds the route with the canned response. Existing route for the method and path is replaced.
+   * @param method request method, like <code>GET</code>
+   * @param path request path without the query
+   * @param response response to send
+   */
+  public void addRoute(String method, String path, StubResponse response) {
+    addRoute(method, path, request -> response);
+  }
+
+  /**
+   * Adds the route with the handler. Existing route for the method and path is replaced.
+   * @param method request method, like <code>GET</code>
+   * @param path request path without the query
+   * @param handler handler of the requests
+   */
+  public void addRoute(String method, String path, StubHandler handler) {
+    routes.put(routeKey(method, path), handler);
+  }
+
+  /**
+   * Removes the route.
+   * @param method request method
+   * @param path request path without the query
+   */
+  public void removeRoute(String method, String path) {
+    routes.remove(routeKey(method, path));
+  }
+
+  /**
+   * Sets the handler for the requests which don't match any route.
+   * @param handler handler of the requests
+   */
+  public void setDefaultHandler(StubHandler handler) {
+    if (handler == null)
+      throw new IllegalArgumentException("Handler can't be null");
+    defaultHandler = handler;
+  }
+
+  /**
+   * Sets the maximal size of the request content. The requests with the larger content are rejected with
+   * <code>413</code> and their connection is closed. Default value is {@link #DEFAULT_MAX_BODY_SIZE}.
+   * @param maxBodySize maximal size of the content in bytes
+   */
+  public void setMaxBodySize(int maxBodySize) {
+    if (maxBodySize < 0)
+      throw new IllegalArgumentException("Body size can't be negative: " + maxBodySize);
+    this.maxBodySize = maxBodySize;
+  }
+
+  private static String routeKey(String method, String path) {
+    return method.toUpperCase(Locale.ROOT) + " " + path;
+  }
+
+  /**
+   * Gets the count of the requests received by the server.
+   * @return count of the received requests
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Gets the port the server listens to. If the server is initialized with port 0, the actual port is
+   * known after the server is started.
+   * @return port of the server
+   */
+  public int getPort() {
+    return port;
+  }
+
+  /**
+   * Gets the URL of the server to be used with {@link com.brokenevent.nanotests.http.TestGetRequest#setHostUrl(String)}.
+   * @return URL of the server
+   */
+  public String getUrl() {
+    String host = address.getHostAddress();
+    return "http://" + (host.indexOf(':') != -1 ? "[" + host + "]" : host) + ":" + port;
+  }
+
+  /**
+   * Starts the server.
+   * @throws IllegalStateException if the server is already started
+   */
+  public synchronized void start() {
+    if (running)
+      throw new IllegalStateException("Server is already started");
+
+    try {
+      selector = Selector.open();
+      server = ServerSocketChannel.open();
+      server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      server.bind(new InetSocketAddress(address, port), BACKLOG);
+      server.configureBlocking(false);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+      port = server.socket().getLocalPort();
+    } catch (IOException e) {
+      closeQuietly(server);
+      closeQuietly(selector);
+      throw new IllegalStateException("Failed to start stub server on port " + port, e);
+    }
+
+    running = true;
+    thread = new Thread(this::serve, "nanotests-stub-server-" + port);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the server and closes all the connections. Does nothing if the server isn't started.
+   */
+  public synchronized void stop() {
+    if (!running)
+      return;
+
+    running = false;
+    selector.wakeup();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stops the server. Same as {@link #stop()}.
+   */
+  @Override
+  public void close() {
+    stop();
+  }
+
+  private void serve() {
+    try {
+      while (running) {
+        long timeout = 0;
+        DelayedResponse next = delayed.peek();
+        if (next != null)
+          timeout = Math.max(1, (next.due - System.nanoTime() + 999999) / 1000000);
+
+        selector.select(timeout);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid())
+            continue;
+
+          if (key.isAcceptable())
+            accept();
+          else {
+            Connection connection = (Connection)key.attachment();
+            try {
+              if (key.isReadable())
+                connection.read();
+              if (key.isValid() && key.isWritable())
+                connection.write();
+            } catch (CancelledKeyException e) {
+              connection.close();
+            }
+          }
+        }
+
+        long now = System.nanoTime();
+        while ((next = delayed.peek()) != null && next.due <= now) {
+          delayed.poll();
+          if (next.connection.key.isValid())
+            next.connection.resume(next.buffer);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Stub server failed", e);
+    } finally {
+      for (SelectionKey key: selector.keys())
+        closeQuietly(key.channel());
+      closeQuietly(selector);
+      delayed.clear();
+      running = false;
+    }
+  }
+
+  /**
+   * Accepts the pending connections. The failure of a single connection closes only its channel, and the failure
+   * to accept, like the exhausted file descriptors, is retried by the next select.
+   */
+  private void accept() {
+    while (true) {
+      SocketChannel channel;
+      try {
+        channel = server.accept();
+      } catch (IOException e) {
+        return;
+      }
+      if (channel == null)
+        return;
+
+      try {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+      } catch (IOException e) {
+        closeQuietly(channel);
+      }
+    }
+  }
+
+  private StubResponse handle(StubRequest request) {
+    requestCount.incrementAndGet();
+    StubHandler handler = routes.get(routeKey(request.getMethod(), request.getPath()));
+    if (handler == null && request.getMethod().equals("HEAD"))
+      handler = routes.get(routeKey("GET", request.getPath()));
+    if (handler == null)
+      handler = defaultHandler;
+
+    try {
+      StubResponse response = handler.handle(request);
+      return response != null ? response : new StubResponse(500, "Handler returned no response for " + request);
+    } catch (Throwable e) {
+      // the handlers may use the asserts, and the selector thread should survive their errors
+      return new StubResponse(500, "Handler failed for " + request + ": " + e);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable == null)
+      return;
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // nothing to do
+    }
+  }
+
+  private class Connection {
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer output;
+    private boolean waiting;
+    private boolean closing;
+    private int chunkPosition; // start of the first chunk which isn't received yet, 0 if not known
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    void read() {
+      try {
+        if (!input.hasRemaining())
+          input = grow(input, input.capacity() * 2);
+        if (channel.read(input) == -1) {
+          close();
+          return;
+        }
+      } catch (IOException e) {
+        close();
+        return;
+      }
+      process();
+    }
+
+    void write() {
+      if (flush())
+        process();
+    }
+
+    void resume(ByteBuffer buffer) {
+      send(buffer);
+      process();
+    }
+
+    private void send(ByteBuffer buffer) {
+      waiting = false;
+      output = buffer;
+      if (!flush() && key.isValid())
+        key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private boolean flush() {
+      try {
+        channel.write(output);
+      } catch (IOException e) {
+        close();
+        return false;
+      }
+      if (output.hasRemaining())
+        return false;
+
+      output = null;
+      if (closing) {
+        close();
+        return false;
+      }
+      if (key.interestOps() != SelectionKey.OP_READ)
+        key.interestOps(SelectionKey.OP_READ);
+      return true;
+    }
+
+    private void process() {
+      while (!waiting && output == null && !closing) {
+        int headEnd = findHeadEnd();
+        if (headEnd == -1) {
+          if (input.position() > MAX_HEAD_SIZE)
+            reject(new StubResponse(431, "Request head is too large"));
+          return;
+        }
+
+        String[] lines = new String(input.array(), 0, headEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+          reject(new StubResponse(400, "Malformed request line"));
+          return;
+        }
+
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 1; i < lines.length; i++) {
+          int colon = lines[i].indexOf(':');
+          if (colon > 0)
+            headers.put(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+        }
+        int bodyStart = headEnd + 4;
+        byte[] content;
+        int requestEnd;
+        if (headers.containsKey("Transfer-Encoding")) {
+          if (!"chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            reject(new StubResponse(501, "Unsupported transfer encoding"));
+            return;
+          }
+
+          requestEnd = findChunkedEnd(chunkPosition > 0 ? chunkPosition : bodyStart);
+          if (requestEnd == -2) {
+            reject(new StubResponse(400, "Malformed chunked content"));
+            return;
+          }
+          if (requestEnd == -1) {
+            // the chunk headers are counted too, so the limit is a bit stricter than for Content-Length
+            if ((long)input.position() - bodyStart > maxBodySize) {
+              reject(new StubResponse(413, "Request content is larger than " + maxBodySize + " bytes"));
+              return;
+            }
+            if (!input.hasRemaining())
+              input = grow(input, input.capacity() * 2);
+            return;
+          }
+          content = decodeChunked(bodyStart, requestEnd);
+        } else {
+          long length;
+          try {
+            String value = headers.get("Content-Length");
+            length = value == null ? 0 : Long.parseLong(value.trim());
+          } catch (NumberFormatException e) {
+            length = -1;
+          }
+          if (length < 0) {
+            reject(new StubResponse(400, "Malformed Content-Length"));
+            return;
+          }
+          if (length > maxBodySize || bodyStart + length > Integer.MAX_VALUE - 8) {
+            reject(new StubResponse(413, "Request content is larger than " + maxBodySize + " bytes"));
+            return;
+          }
+
+          requestEnd = (int)(bodyStart + length);
+          if (input.position() < requestEnd) {
+            if (input.capacity() < requestEnd)
+              input = grow(input, requestEnd);
+            return;
+          }
+          content = new byte[(int)length];
+          System.arraycopy(input.array(), bodyStart, content, 0, (int)length);
+        }
+
+        input.flip();
+        input.position(requestEnd);
+        input.compact();
+        chunkPosition = 0;
+
+        String version = requestLine[2];
+        String connection = headers.get("Connection");
+        boolean keepAlive = version.equals("HTTP/1.1")
+            ? !"close".equalsIgnoreCase(connection)
+            : "keep-alive".equalsIgnoreCase(connection);
+
+        StubRequest request = new StubRequest(requestLine[0], requestLine[1], version, headers, content);
+        StubResponse response = handle(request);
+        ByteBuffer buffer = response.encode(keepAlive, request.getMethod().equals("HEAD"));
+        closing = !keepAlive;
+
+        long delay = response.getDelay();
+        if (delay > 0) {
+          waiting = true;
+          delayed.add(new DelayedResponse(System.nanoTime() + delay, this, buffer));
+        } else
+          send(buffer);
+      }
+    }
+
+    private void reject(StubResponse response) {
+      requestCount.incrementAndGet();
+      closing = true;
+      send(response.encode(false, false));
+    }
+
+    /**
+     * Finds the end of the chunked content. The start of the first chunk which isn't received yet is kept,
+     * so the next call continues from it instead of scanning the received chunks again.
+     * @return position after the content, -1 if the content isn't received yet or -2 if the content is malformed
+     */
+    private int findChunkedEnd(int position) {
+      byte[] data = input.array();
+      int end = input.position();
+      while (true) {
+        chunkPosition = position;
+        int lineEnd = findLineEnd(position);
+        if (lineEnd == -1)
+          return -1;
+
+        int size = parseChunkSize(position, lineEnd);
+        if (size < 0)
+          return -2;
+
+        position = lineEnd + 2;
+        if (size == 0) {
+          // skip the trailer
+          while (true) {
+            lineEnd = findLineEnd(position);
+            if (lineEnd == -1)
+              return -1;
+            if (lineEnd == position)
+              return position + 2;
+            position = lineEnd + 2;
+          }
+        }
+
+        if (end - position < (long)size + 2)
+          return -1;
+        position += size;
+        if (data[position] != '\r' || data[position + 1] != '\n')
+          return -2;
+        position += 2;
+      }
+    }
+
+    private byte[] decodeChunked(int position, int end) {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      while (position < end) {
+        int lineEnd = findLineEnd(position);
+        int size = parseChunkSize(position, lineEnd);
+        if (size == 0)
+          break;
+        content.write(input.array(), lineEnd + 2, size);
+        position = lineEnd + 2 + size + 2;
+      }
+      return content.toByteArray();
+    }
+
+    private int parseChunkSize(int start, int end) {
+      byte[] data = input.array();
+      int size = 0;
+      int digits = 0;
+      for (int i = start; i < end && data[i] != ';'; i++, digits++) {
+        int digit = Character.digit(data[i], 16);
+        if (digit == -1 || digits == 7)
+          return -1;
+        size = size * 16 + digit;
+      }
+      return digits == 0 ? -1 : size;
+    }
+
+    private int findLineEnd(int position) {
+      byte[] data = input.array();
+      for (int i = position, end = input.position() - 1; i < end; i++)
+        if (data[i] == '\r' && data[i + 1] == '\n')
+          return i;
+      return -1;
+    }
+
+    private int findHeadEnd() {
+      byte[] data = input.array();
+      for (int i = 0, end = input.position() - 3; i < end; i++)
+        if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n')
+          return i;
+      return -1;
+    }
+
+    private void close() {
+      key.cancel();
+      closeQuietly(channel);
+    }
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+    ByteBuffer grown = ByteBuffer.allocate(capacity);
+    buffer.flip();
+    grown.put(buffer);
+    return grown;
+  }
+
+  private static class DelayedResponse implements Comparable<DelayedResponse> {
+    private final long due;
+    private final Connection connection;
+    private final ByteBuffer buffer;
+
+    DelayedResponse(long due, Connection connection, ByteBuffer buffer) {
+      this.due = due;
+      this.connection = connection;
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int compareTo(DelayedResponse other) {
+      return Long.compare(due, other.due);
+    }
+  }
+}
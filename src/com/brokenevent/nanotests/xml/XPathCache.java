@@ -0,0 +1,213 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Broken Event.
+ * http://brokenevent.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brokenevent.nanotests.xml;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the compiled XPath expressions used by {@link com.brokenevent.nanotests.XmlAssert}.
+ * The compiled expressions and the {@link XPath} objects aren't thread-safe, so they are pooled: the evaluation
+ * takes an idle compiled expression of the path, or compiles a new one if all of them are in use, and returns it
+ * back after the evaluation. The pools are shared by all the threads, so the short-lived threads, like the virtual
+ * threads of the load runners, reuse the expressions compiled by others. The cache holds the bounded count of the
+ * paths and drops the least recently used path when it is full.
+ * @author BrokenEvent
+ */
+public final class XPathCache {
+  /**
+   * Default maximal count of the cached paths.
+   */
+  public static final int DEFAULT_SIZE = 256;
+  private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors() * 2;
+
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder misses = new LongAdder();
+  private static volatile int maxSize = DEFAULT_SIZE;
+
+  private static final XPathFactory factory = XPathFactory.newInstance();
+  private static final Deque<XPath> xpaths = new ArrayDeque<XPath>();
+  private static final Map<String, Deque<XPathExpression>> expressions = new LinkedHashMap<String, Deque<XPathExpression>>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Deque<XPathExpression>> eldest) {
+      return size() > maxSize;
+    }
+  };
+
+  private XPathCache() {}
+
+  /**
+   * Evaluates the expression with the compiled expression from the cache. The expression is compiled and cached
+   * if there is no idle compiled expression of the path.
+   * @param path XPath expression
+   * @param item context of the evaluation, like {@link org.w3c.dom.Document}
+   * @param returnType expected result type, one of {@link javax.xml.xpath.XPathConstants}
+   * @return result of the evaluation
+   * @throws XPathExpressionException when the expression can't be compiled or evaluated
+   */
+  public static Object evaluate(String path, Object item, QName returnType) throws XPathExpressionException {
+    XPathExpression expression = borrow(path);
+    Object result = expression.evaluate(item, returnType);
+    giveBack(path, expression);
+    return result;
+  }
+
+  private static XPathExpression borrow(String path) throws XPathExpressionException {
+    Deque<XPathExpression> idle;
+    synchronized (expressions){
+      trim();
+      idle = expressions.get(path);
+      if (idle == null)
+        expressions.put(path, idle = new ArrayDeque<XPathExpression>());
+    }
+
+    synchronized (idle){
+      XPathExpression expression = idle.pollFirst();
+      if (expression != null){
+        hits.increment();
+        return expression;
+      }
+    }
+
+    misses.increment();
+    XPath xpath;
+    synchronized (xpaths){
+      xpath = xpaths.pollFirst();
+    }
+    if (xpath == null)
+      synchronized (factory){
+        xpath = factory.newXPath();
+      }
+
+    try {
+      return xpath.compile(path);
+    } finally {
+      xpath.reset();
+      synchronized (xpaths){
+        if (xpaths.size() < MAX_IDLE)
+          xpaths.addFirst(xpath);
+      }
+    }
+  }
+
+  private static void giveBack(String path, XPathExpression expression) {
+    Deque<XPathExpression> idle;
+    synchronized (expressions){
+      idle = expressions.get(path);
+    }
+    // the path could be dropped from the cache meanwhile
+    if (idle == null)
+      return;
+
+    synchronized (idle){
+      if (idle.size() < MAX_IDLE)
+        idle.addFirst(expression);
+    }
+  }
+
+  private static void trim() {
+    int excess = expressions.size() - maxSize;
+    if (excess <= 0)
+      return;
+
+    Iterator<String> iterator = expressions.keySet().iterator();
+    for (int i = 0; i < excess; i++) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Gets the maximal count of the cached paths.
+   * @return maximal size of the cache
+   */
+  public static int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Sets the maximal count of the cached paths. The larger cache drops its least recently used paths
+   * on the next access.
+   * @param maxSize maximal size of the cache
+   */
+  public static void setMaxSize(int maxSize) {
+    if (maxSize < 1)
+      throw new IllegalArgumentException("Cache size should be positive: " + maxSize);
+    XPathCache.maxSize = maxSize;
+  }
+
+  /**
+   * Gets the count of the expressions found in the cache since the start or the last {@link #resetStatistics()}.
+   * @return count of the cache hits
+   */
+  public static long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the count of the expressions compiled because they weren't found in the cache since the start
+   * or the last {@link #resetStatistics()}.
+   * @return count of the cache misses
+   */
+  public static long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the share of the expressions found in the cache.
+   * @return hit rate in range 0..1
+   */
+  public static double getHitRate() {
+    long hits = getHits();
+    long total = hits + getMisses();
+    return total == 0 ? 0 : (double)hits / total;
+  }
+
+  /**
+   * Resets the hit and miss counters. The cached expressions are kept.
+   */
+  public static void resetStatistics() {
+    hits.reset();
+    misses.reset();
+  }
+
+  /**
+   * Formats the hit and miss counters.
+   * @return statistics of the cache
+   */
+  public static String getStatistics() {
+    return String.format(Locale.US, "XPath cache: %d hits, %d misses, hit rate %.1f%%", getHits(), getMisses(), getHitRate() * 100);
+  }
+}